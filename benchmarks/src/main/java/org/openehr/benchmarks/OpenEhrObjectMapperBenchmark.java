@@ -0,0 +1,107 @@
+/*
+ * Copyright 2020-2021 Better Ltd (www.better.care)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.openehr.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nedap.archie.rm.composition.Composition;
+import org.apache.commons.io.IOUtils;
+import org.openehr.rest.json.OpenEhrObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read, write and round-trip of the bundled compositions with {@link OpenEhrObjectMapper}, as {@link JsonNode} and as
+ * {@link Composition}. Run with {@code -prof gc} to get allocation rates, {@link Mode#SampleTime} reports p99.
+ *
+ * @author Dusan Markovic
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OpenEhrObjectMapperBenchmark {
+
+    @Param({"composition.json", "AtemfrequenzTemplate-composition.json", "MedikationLoop.json"})
+    private String payload;
+
+    @Param({"false", "true"})
+    private boolean inferRmTypes;
+
+    private ObjectMapper objectMapper;
+    private byte[] json;
+    private JsonNode jsonNode;
+    private Composition composition;
+
+    @Setup
+    public void setUp() throws IOException {
+        objectMapper = new OpenEhrObjectMapper(inferRmTypes);
+        try (InputStream inputStream = Objects.requireNonNull(
+                OpenEhrObjectMapperBenchmark.class.getResourceAsStream("/rest/" + payload), payload)) {
+            json = IOUtils.toString(inputStream, StandardCharsets.UTF_8)
+                    .replace("{{REPLACE_THIS}}", "Jane Nurse")
+                    .getBytes(StandardCharsets.UTF_8);
+        }
+        jsonNode = objectMapper.readTree(json);
+        composition = objectMapper.readValue(json, Composition.class);
+    }
+
+    @Benchmark
+    public JsonNode readJsonNode() throws IOException {
+        return objectMapper.readTree(json);
+    }
+
+    @Benchmark
+    public Composition readComposition() throws IOException {
+        return objectMapper.readValue(json, Composition.class);
+    }
+
+    @Benchmark
+    public byte[] writeJsonNode() throws IOException {
+        return objectMapper.writeValueAsBytes(jsonNode);
+    }
+
+    @Benchmark
+    public byte[] writeComposition() throws IOException {
+        return objectMapper.writeValueAsBytes(composition);
+    }
+
+    @Benchmark
+    public byte[] roundTripJsonNode() throws IOException {
+        return objectMapper.writeValueAsBytes(objectMapper.readTree(json));
+    }
+
+    @Benchmark
+    public byte[] roundTripComposition() throws IOException {
+        return objectMapper.writeValueAsBytes(objectMapper.readValue(json, Composition.class));
+    }
+}
@@ -0,0 +1,513 @@
+/*
+ * Copyright 2020-2021 Better Ltd (www.better.care)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.openehr.data;
+
+import org.openehr.data.OpenEhrQueryResponse.OpenEhrColumnData;
+
+import javax.annotation.Nonnull;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+/**
+ * Column oriented form of {@link OpenEhrQueryResponse}. Column types are detected from the first rows: decimal numbers
+ * are stored in {@code double[]}, integral numbers in {@code long[]}, strings are dictionary encoded and everything else
+ * is kept as {@link Object}. A column is widened (long to double, or to object) when a later value does not fit.
+ *
+ * @author Dusan Markovic
+ */
+public class OpenEhrColumnarQueryResponse implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final int SAMPLE_SIZE = 32;
+    private static final int INITIAL_CAPACITY = 16;
+
+    public enum ColumnType {
+        DOUBLE, LONG, STRING, OBJECT
+    }
+
+    private final OpenEhrRequestMetaData meta;
+    private final String name;
+    private final String q;
+    private final List<Column> columns;
+    private final int rowCount;
+
+    private OpenEhrColumnarQueryResponse(OpenEhrRequestMetaData meta, String name, String q, List<Column> columns, int rowCount) {
+        this.meta = meta;
+        this.name = name;
+        this.q = q;
+        this.columns = Collections.unmodifiableList(columns);
+        this.rowCount = rowCount;
+    }
+
+    public static OpenEhrColumnarQueryResponse of(@Nonnull OpenEhrQueryResponse response) {
+        List<List<Object>> rows = response.getRows();
+        return of(response.getMeta(),
+                  response.getName(),
+                  response.getQ(),
+                  response.getColumns(),
+                  rows == null ? Collections.emptyIterator() : rows.iterator());
+    }
+
+    /**
+     * Builds the columnar response from rows as they are read, only the first few rows are held to detect column types.
+     *
+     * @param meta    meta data
+     * @param name    query name
+     * @param q       query
+     * @param columns column definitions
+     * @param rows    rows
+     * @return columnar response
+     */
+    public static OpenEhrColumnarQueryResponse of(
+            OpenEhrRequestMetaData meta,
+            String name,
+            String q,
+            List<OpenEhrColumnData> columns,
+            @Nonnull Iterator<List<Object>> rows) {
+        List<List<Object>> sample = new ArrayList<>(SAMPLE_SIZE);
+        while (sample.size() < SAMPLE_SIZE && rows.hasNext()) {
+            sample.add(rows.next());
+        }
+
+        int columnCount = columns == null || columns.isEmpty()
+                ? sample.stream().mapToInt(List::size).max().orElse(0)
+                : columns.size();
+        List<Column> columnList = new ArrayList<>(columnCount);
+        for (int i = 0; i < columnCount; i++) {
+            OpenEhrColumnData columnData = columns != null && i < columns.size() ? columns.get(i) : new OpenEhrColumnData();
+            columnList.add(createColumn(detectColumnType(sample, i), columnData));
+        }
+
+        int rowCount = 0;
+        for (List<Object> row : sample) {
+            append(columnList, row);
+            rowCount++;
+        }
+        while (rows.hasNext()) {
+            append(columnList, rows.next());
+            rowCount++;
+        }
+        columnList.forEach(Column::trim);
+        return new OpenEhrColumnarQueryResponse(meta, name, q, columnList, rowCount);
+    }
+
+    public OpenEhrRequestMetaData getMeta() {
+        return meta;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getQ() {
+        return q;
+    }
+
+    public List<Column> getColumns() {
+        return columns;
+    }
+
+    public Column getColumn(int index) {
+        return columns.get(index);
+    }
+
+    public Column getColumn(@Nonnull String columnName) {
+        return columns.stream()
+                .filter(column -> columnName.equals(column.getColumnData().getName()))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown column: " + columnName));
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public List<Object> getRow(int rowIndex) {
+        List<Object> row = new ArrayList<>(columns.size());
+        for (Column column : columns) {
+            row.add(column.get(rowIndex));
+        }
+        return row;
+    }
+
+    private static void append(List<Column> columnList, List<Object> row) {
+        for (int i = 0; i < columnList.size(); i++) {
+            Object value = row != null && i < row.size() ? row.get(i) : null;
+            Column column = columnList.get(i);
+            if (value != null && !column.accepts(value)) {
+                column = column.widen(value);
+                columnList.set(i, column);
+            }
+            column.add(value);
+        }
+    }
+
+    private static ColumnType detectColumnType(List<List<Object>> sample, int index) {
+        ColumnType type = null;
+        for (List<Object> row : sample) {
+            Object value = row != null && index < row.size() ? row.get(index) : null;
+            if (value != null) {
+                ColumnType valueType = getValueType(value);
+                if (type == null || type == valueType) {
+                    type = valueType;
+                } else if (isNumeric(type) && isNumeric(valueType)) {
+                    type = ColumnType.DOUBLE;
+                } else {
+                    return ColumnType.OBJECT;
+                }
+            }
+        }
+        return type == null ? ColumnType.OBJECT : type;
+    }
+
+    private static ColumnType getValueType(Object value) {
+        if (value instanceof String) {
+            return ColumnType.STRING;
+        }
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ColumnType.LONG;
+        }
+        if (value instanceof BigInteger) {
+            return ((BigInteger)value).bitLength() < Long.SIZE ? ColumnType.LONG : ColumnType.OBJECT;
+        }
+        if (value instanceof Double || value instanceof Float || value instanceof BigDecimal) {
+            return ColumnType.DOUBLE;
+        }
+        return ColumnType.OBJECT;
+    }
+
+    private static boolean isNumeric(ColumnType type) {
+        return type == ColumnType.LONG || type == ColumnType.DOUBLE;
+    }
+
+    private static Column createColumn(ColumnType type, OpenEhrColumnData columnData) {
+        switch (type) {
+            case DOUBLE:
+                return new DoubleColumn(columnData);
+            case LONG:
+                return new LongColumn(columnData);
+            case STRING:
+                return new StringColumn(columnData);
+            default:
+                return new ObjectColumn(columnData);
+        }
+    }
+
+    public abstract static class Column implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final OpenEhrColumnData columnData;
+        protected final BitSet nulls = new BitSet();
+        protected int size;
+
+        protected Column(OpenEhrColumnData columnData) {
+            this.columnData = columnData;
+        }
+
+        public OpenEhrColumnData getColumnData() {
+            return columnData;
+        }
+
+        public abstract ColumnType getType();
+
+        public int size() {
+            return size;
+        }
+
+        public boolean isNull(int rowIndex) {
+            checkIndex(rowIndex);
+            return nulls.get(rowIndex);
+        }
+
+        /**
+         * Returns the boxed value, typed access ({@link DoubleColumn#getDouble(int)}, ...) should be preferred.
+         *
+         * @param rowIndex row index
+         * @return value or {@code null}
+         */
+        public Object get(int rowIndex) {
+            return isNull(rowIndex) ? null : getValue(rowIndex);
+        }
+
+        protected abstract Object getValue(int rowIndex);
+
+        protected abstract boolean accepts(Object value);
+
+        protected abstract void add(Object value);
+
+        protected abstract void trim();
+
+        protected Column widen(Object value) {
+            ObjectColumn column = new ObjectColumn(columnData);
+            for (int i = 0; i < size; i++) {
+                column.add(get(i));
+            }
+            return column;
+        }
+
+        protected void checkIndex(int rowIndex) {
+            if (rowIndex < 0 || rowIndex >= size) {
+                throw new IndexOutOfBoundsException("Row index " + rowIndex + " out of bounds for size " + size);
+            }
+        }
+    }
+
+    public static final class DoubleColumn extends Column {
+        private static final long serialVersionUID = 1L;
+
+        private double[] values = new double[INITIAL_CAPACITY];
+
+        private DoubleColumn(OpenEhrColumnData columnData) {
+            super(columnData);
+        }
+
+        @Override
+        public ColumnType getType() {
+            return ColumnType.DOUBLE;
+        }
+
+        public double getDouble(int rowIndex) {
+            checkIndex(rowIndex);
+            return values[rowIndex];
+        }
+
+        /**
+         * Returns non-null values.
+         *
+         * @return stream of values
+         */
+        public DoubleStream stream() {
+            return nulls.isEmpty()
+                    ? Arrays.stream(values, 0, size)
+                    : IntStream.range(0, size).filter(i -> !nulls.get(i)).mapToDouble(i -> values[i]);
+        }
+
+        @Override
+        protected Object getValue(int rowIndex) {
+            return values[rowIndex];
+        }
+
+        @Override
+        protected boolean accepts(Object value) {
+            return value instanceof Number && isNumeric(getValueType(value));
+        }
+
+        @Override
+        protected void add(Object value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            if (value == null) {
+                nulls.set(size);
+            } else {
+                values[size] = ((Number)value).doubleValue();
+            }
+            size++;
+        }
+
+        @Override
+        protected void trim() {
+            values = Arrays.copyOf(values, size);
+        }
+    }
+
+    public static final class LongColumn extends Column {
+        private static final long serialVersionUID = 1L;
+
+        private long[] values = new long[INITIAL_CAPACITY];
+
+        private LongColumn(OpenEhrColumnData columnData) {
+            super(columnData);
+        }
+
+        @Override
+        public ColumnType getType() {
+            return ColumnType.LONG;
+        }
+
+        public long getLong(int rowIndex) {
+            checkIndex(rowIndex);
+            return values[rowIndex];
+        }
+
+        /**
+         * Returns non-null values.
+         *
+         * @return stream of values
+         */
+        public LongStream stream() {
+            return nulls.isEmpty()
+                    ? Arrays.stream(values, 0, size)
+                    : IntStream.range(0, size).filter(i -> !nulls.get(i)).mapToLong(i -> values[i]);
+        }
+
+        @Override
+        protected Object getValue(int rowIndex) {
+            return values[rowIndex];
+        }
+
+        @Override
+        protected boolean accepts(Object value) {
+            return getValueType(value) == ColumnType.LONG;
+        }
+
+        @Override
+        protected void add(Object value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            if (value == null) {
+                nulls.set(size);
+            } else {
+                values[size] = ((Number)value).longValue();
+            }
+            size++;
+        }
+
+        @Override
+        protected void trim() {
+            values = Arrays.copyOf(values, size);
+        }
+
+        @Override
+        protected Column widen(Object value) {
+            if (getValueType(value) != ColumnType.DOUBLE) {
+                return super.widen(value);
+            }
+            DoubleColumn column = new DoubleColumn(getColumnData());
+            for (int i = 0; i < size; i++) {
+                column.add(get(i));
+            }
+            return column;
+        }
+    }
+
+    public static final class StringColumn extends Column {
+        private static final long serialVersionUID = 1L;
+
+        private final List<String> dictionary = new ArrayList<>();
+        private transient Map<String, Integer> codesByValue = new HashMap<>();
+        private int[] codes = new int[INITIAL_CAPACITY];
+
+        private StringColumn(OpenEhrColumnData columnData) {
+            super(columnData);
+        }
+
+        @Override
+        public ColumnType getType() {
+            return ColumnType.STRING;
+        }
+
+        public String getString(int rowIndex) {
+            return isNull(rowIndex) ? null : dictionary.get(codes[rowIndex]);
+        }
+
+        /**
+         * Returns index of the value in {@link #getDictionary()}, or -1 for {@code null}.
+         *
+         * @param rowIndex row index
+         * @return dictionary code
+         */
+        public int getCode(int rowIndex) {
+            return isNull(rowIndex) ? -1 : codes[rowIndex];
+        }
+
+        public List<String> getDictionary() {
+            return Collections.unmodifiableList(dictionary);
+        }
+
+        @Override
+        protected Object getValue(int rowIndex) {
+            return dictionary.get(codes[rowIndex]);
+        }
+
+        @Override
+        protected boolean accepts(Object value) {
+            return value instanceof String;
+        }
+
+        @Override
+        protected void add(Object value) {
+            if (size == codes.length) {
+                codes = Arrays.copyOf(codes, size * 2);
+            }
+            if (value == null) {
+                nulls.set(size);
+            } else {
+                codes[size] = codesByValue.computeIfAbsent((String)value, key -> {
+                    dictionary.add(key);
+                    return dictionary.size() - 1;
+                });
+            }
+            size++;
+        }
+
+        @Override
+        protected void trim() {
+            codes = Arrays.copyOf(codes, size);
+            codesByValue = null;
+        }
+    }
+
+    public static final class ObjectColumn extends Column {
+        private static final long serialVersionUID = 1L;
+
+        private final ArrayList<Object> values = new ArrayList<>(INITIAL_CAPACITY);
+
+        private ObjectColumn(OpenEhrColumnData columnData) {
+            super(columnData);
+        }
+
+        @Override
+        public ColumnType getType() {
+            return ColumnType.OBJECT;
+        }
+
+        @Override
+        protected Object getValue(int rowIndex) {
+            return values.get(rowIndex);
+        }
+
+        @Override
+        protected boolean accepts(Object value) {
+            return true;
+        }
+
+        @Override
+        protected void add(Object value) {
+            if (value == null) {
+                nulls.set(size);
+            }
+            values.add(value);
+            size++;
+        }
+
+        @Override
+        protected void trim() {
+            values.trimToSize();
+        }
+    }
+}
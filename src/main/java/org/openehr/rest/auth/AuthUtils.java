@@ -21,7 +21,13 @@ import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.HttpClient;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.openehr.rest.metrics.OpenEhrClientMetrics;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.http.converter.ByteArrayHttpMessageConverter;
 import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.http.converter.StringHttpMessageConverter;
@@ -32,6 +38,7 @@ import org.springframework.web.client.RestTemplate;
 
 import java.net.URI;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -44,12 +51,38 @@ public class AuthUtils {
             Jaxb2RootElementHttpMessageConverter jaxb2MessageConverter,
             ByteArrayHttpMessageConverter byteArrayHttpMessageConverter,
             MappingJackson2HttpMessageConverter mappingJackson2HttpMessageConverter) {
-        HttpHost host = new HttpHost(uri.getHost(), uri.getPort(), uri.getScheme());
-        HttpClient client = createDefaultHttpClient(username, password);
+        return createRestTemplate(
+                uri, username, password, errorHandler, new RestClientOptions(),
+                stringHttpMessageConverter, jaxb2MessageConverter, byteArrayHttpMessageConverter, mappingJackson2HttpMessageConverter);
+    }
+
+    /**
+     * Same as the method without {@code options}, with the client pooled, timed or streaming as the options say.
+     */
+    public static RestTemplate createRestTemplate(
+            URI uri, String username, String password, ResponseErrorHandler errorHandler,
+            RestClientOptions options,
+            StringHttpMessageConverter stringHttpMessageConverter,
+            Jaxb2RootElementHttpMessageConverter jaxb2MessageConverter,
+            ByteArrayHttpMessageConverter byteArrayHttpMessageConverter,
+            MappingJackson2HttpMessageConverter mappingJackson2HttpMessageConverter) {
+        return createRestTemplate(
+                createRequestFactory(uri, username, password, options), errorHandler, options.getMetrics(),
+                stringHttpMessageConverter, jaxb2MessageConverter, byteArrayHttpMessageConverter, mappingJackson2HttpMessageConverter);
+    }
 
-        RestTemplate templateWithAuth = username == null ?
-                new RestTemplate() :
-                new RestTemplate(new BasicAuthHttpRequestFactory(client, host, getCredentialsProvider(username, password)));
+    /**
+     * Creates a rest template on top of a request factory, e.g. one from {@link #createRequestFactory}, so that the
+     * factory can be shared with other clients.
+     */
+    public static RestTemplate createRestTemplate(
+            ClientHttpRequestFactory requestFactory, ResponseErrorHandler errorHandler,
+            OpenEhrClientMetrics metrics,
+            StringHttpMessageConverter stringHttpMessageConverter,
+            Jaxb2RootElementHttpMessageConverter jaxb2MessageConverter,
+            ByteArrayHttpMessageConverter byteArrayHttpMessageConverter,
+            MappingJackson2HttpMessageConverter mappingJackson2HttpMessageConverter) {
+        RestTemplate templateWithAuth = new RestTemplate(requestFactory);
         List<HttpMessageConverter<?>> newMessageConverters = templateWithAuth.getMessageConverters().stream()
                 .filter(mc -> !(mc instanceof MappingJackson2HttpMessageConverter))
                 .filter(mc -> !(mc instanceof Jaxb2RootElementHttpMessageConverter))
@@ -64,9 +97,33 @@ public class AuthUtils {
         if (errorHandler != null) {
             templateWithAuth.setErrorHandler(errorHandler);
         }
+        if (metrics != null) {
+            templateWithAuth.getInterceptors().add(metrics.requestInterceptor());
+        }
         return templateWithAuth;
     }
 
+    /**
+     * Creates a request factory for the rest template overload that takes one, so that it can be shared with other
+     * clients (e.g. {@link org.openehr.rest.template.OpenEhrTemplateUploader}).
+     */
+    public static ClientHttpRequestFactory createRequestFactory(URI uri, String username, String password, RestClientOptions options) {
+        HttpClientPoolSettings poolSettings = options.getPoolSettings();
+        if (username == null && poolSettings == null) {
+            SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+            requestFactory.setBufferRequestBody(options.isBufferRequestBody());
+            return requestFactory;
+        }
+        HttpClient client = poolSettings == null
+                ? createDefaultHttpClient(username, password)
+                : createPooledHttpClient(username, password, poolSettings, options.getMetrics());
+        HttpComponentsClientHttpRequestFactory requestFactory = username == null
+                ? new HttpComponentsClientHttpRequestFactory(client)
+                : new BasicAuthHttpRequestFactory(client, new HttpHost(uri.getHost(), uri.getPort(), uri.getScheme()), username, password);
+        requestFactory.setBufferRequestBody(options.isBufferRequestBody());
+        return requestFactory;
+    }
+
     protected static CloseableHttpClient createDefaultHttpClient(String username, String password) {
         HttpClientBuilder httpClientBuilder = HttpClientBuilder.create();
         if (username != null && password != null) {
@@ -75,6 +132,32 @@ public class AuthUtils {
         return httpClientBuilder.build();
     }
 
+    protected static CloseableHttpClient createPooledHttpClient(
+            String username, String password, HttpClientPoolSettings poolSettings, OpenEhrClientMetrics metrics) {
+        PoolingHttpClientConnectionManager connectionManager =
+                new PoolingHttpClientConnectionManager(poolSettings.getTimeToLiveMillis(), TimeUnit.MILLISECONDS);
+        connectionManager.setMaxTotal(poolSettings.getMaxTotal());
+        connectionManager.setDefaultMaxPerRoute(poolSettings.getMaxPerRoute());
+        if (metrics != null) {
+            metrics.bindConnectionPool(connectionManager);
+        }
+
+        long keepAlive = poolSettings.getKeepAliveMillis();
+        HttpClientBuilder httpClientBuilder = HttpClientBuilder.create()
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy((response, context) -> {
+                    long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return serverKeepAlive > 0L ? Math.min(serverKeepAlive, keepAlive) : keepAlive;
+                });
+        if (poolSettings.getIdleEvictionMillis() > 0L) {
+            httpClientBuilder.evictExpiredConnections().evictIdleConnections(poolSettings.getIdleEvictionMillis(), TimeUnit.MILLISECONDS);
+        }
+        if (username != null && password != null) {
+            httpClientBuilder.setDefaultCredentialsProvider(getCredentialsProvider(username, password));
+        }
+        return httpClientBuilder.build();
+    }
+
     protected static CredentialsProvider getCredentialsProvider(String username, String password) {
         BasicCredentialsProvider basicCredentialsProvider = new BasicCredentialsProvider();
         basicCredentialsProvider.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(username, password));
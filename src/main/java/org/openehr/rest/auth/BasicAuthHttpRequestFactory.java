@@ -21,28 +21,85 @@ import org.apache.http.client.HttpClient;
 import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.impl.auth.BasicScheme;
 import org.apache.http.impl.client.BasicAuthCache;
+import org.apache.http.protocol.BasicHttpContext;
 import org.apache.http.protocol.HttpContext;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.StreamingHttpOutputMessage;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URI;
 
 /**
+ * Request factory that authenticates requests to {@code host} with Basic auth. When created with username and password,
+ * the {@code Authorization} header is encoded once and added to every request to the host that does not set its own.
+ * Otherwise a single auth cache
+ * and credentials provider are shared by all requests, each request only gets a small child context on top of them.
+ * Credentials can be replaced at any time with {@link #setCredentials(String, String)} or
+ * {@link #setCredentialsProvider(CredentialsProvider)}, requests in flight keep the previous ones.
+ *
  * @author Dusan Markovic
  */
 public class BasicAuthHttpRequestFactory extends HttpComponentsClientHttpRequestFactory {
 
     protected final HttpHost host;
-    protected CredentialsProvider credentialsProvider;
+    protected volatile CredentialsProvider credentialsProvider;
+    private volatile HttpContext sharedContext;
+    private volatile String authorizationHeader;
 
     public BasicAuthHttpRequestFactory(HttpClient client, HttpHost host) {
         super(client);
         this.host = host;
+        sharedContext = createSharedContext(null);
     }
 
     public BasicAuthHttpRequestFactory(HttpClient client, HttpHost host, CredentialsProvider credentialsProvider) {
         this(client, host);
+        setCredentialsProvider(credentialsProvider);
+    }
+
+    public BasicAuthHttpRequestFactory(HttpClient client, HttpHost host, String username, String password) {
+        this(client, host);
+        setCredentials(username, password);
+    }
+
+    /**
+     * Switches to authentication with {@code credentialsProvider}, replacing credentials set with
+     * {@link #setCredentials(String, String)}.
+     *
+     * @param credentialsProvider credentials provider
+     */
+    public void setCredentialsProvider(CredentialsProvider credentialsProvider) {
         this.credentialsProvider = credentialsProvider;
+        sharedContext = createSharedContext(credentialsProvider);
+        authorizationHeader = null;
+    }
+
+    /**
+     * Switches to preemptive Basic auth with a precomputed {@code Authorization} header.
+     *
+     * @param username username
+     * @param password password
+     */
+    public void setCredentials(String username, String password) {
+        authorizationHeader = "Basic " + HttpHeaders.encodeBasicAuth(username, password, null);
+    }
+
+    @Override
+    public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) throws IOException {
+        ClientHttpRequest request = super.createRequest(uri, httpMethod);
+        String header = authorizationHeader;
+        if (header == null || !isTargetHost(uri)) {
+            return request;
+        }
+        // the caller's headers are only known when the request is executed
+        return request instanceof StreamingHttpOutputMessage
+                ? new StreamingAuthorizingRequest(request, header)
+                : new AuthorizingRequest(request, header);
     }
 
     @Override
@@ -51,16 +108,84 @@ public class BasicAuthHttpRequestFactory extends HttpComponentsClientHttpRequest
     }
 
     protected HttpContext createHttpContext() {
+        return authorizationHeader == null ? new BasicHttpContext(sharedContext) : null;
+    }
+
+    private HttpContext createSharedContext(CredentialsProvider credentialsProvider) {
         AuthCache authCache = new BasicAuthCache();
-        BasicScheme basicScheme = new BasicScheme();
-        authCache.put(host, basicScheme);
+        authCache.put(host, new BasicScheme());
 
         HttpClientContext context = HttpClientContext.create();
         if (credentialsProvider != null) {
             context.setCredentialsProvider(credentialsProvider);
         }
         context.setAuthCache(authCache);
-
         return context;
     }
+
+    private boolean isTargetHost(URI uri) {
+        return host.getHostName().equalsIgnoreCase(uri.getHost())
+                && host.getSchemeName().equalsIgnoreCase(uri.getScheme())
+                && getPort(host.getPort(), host.getSchemeName()) == getPort(uri.getPort(), uri.getScheme());
+    }
+
+    private static int getPort(int port, String scheme) {
+        if (port != -1) {
+            return port;
+        }
+        return "https".equalsIgnoreCase(scheme) ? 443 : 80;
+    }
+
+    /**
+     * Adds the {@code Authorization} header on execution unless the caller has set one.
+     */
+    private static class AuthorizingRequest implements ClientHttpRequest {
+        protected final ClientHttpRequest delegate;
+        private final String authorizationHeader;
+
+        private AuthorizingRequest(ClientHttpRequest delegate, String authorizationHeader) {
+            this.delegate = delegate;
+            this.authorizationHeader = authorizationHeader;
+        }
+
+        @Override
+        public ClientHttpResponse execute() throws IOException {
+            HttpHeaders headers = delegate.getHeaders();
+            if (!headers.containsKey(HttpHeaders.AUTHORIZATION)) {
+                headers.set(HttpHeaders.AUTHORIZATION, authorizationHeader);
+            }
+            return delegate.execute();
+        }
+
+        @Override
+        public String getMethodValue() {
+            return delegate.getMethodValue();
+        }
+
+        @Override
+        public URI getURI() {
+            return delegate.getURI();
+        }
+
+        @Override
+        public OutputStream getBody() throws IOException {
+            return delegate.getBody();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return delegate.getHeaders();
+        }
+    }
+
+    private static final class StreamingAuthorizingRequest extends AuthorizingRequest implements StreamingHttpOutputMessage {
+        private StreamingAuthorizingRequest(ClientHttpRequest delegate, String authorizationHeader) {
+            super(delegate, authorizationHeader);
+        }
+
+        @Override
+        public void setBody(Body body) {
+            ((StreamingHttpOutputMessage)delegate).setBody(body);
+        }
+    }
 }
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2020-2021 Better Ltd (www.better.care)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.openehr.rest.auth;
+
+/**
+ * Connection pool settings for the HTTP client created by {@link AuthUtils}. All durations are in milliseconds.
+ *
+ * @author Dusan Markovic
+ */
+public class HttpClientPoolSettings {
+    private int maxTotal = 200;
+    private int maxPerRoute = 100;
+    private long keepAliveMillis = 30_000L;
+    private long idleEvictionMillis = 60_000L;
+    private long timeToLiveMillis = -1L;
+    private int maxPendingAcquires = -1;
+    private long pendingAcquireTimeoutMillis = 45_000L;
+
+    /**
+     * Returns settings that allow {@code concurrency} requests in flight to one host, e.g. to match the number of
+     * (virtual) threads that share the client.
+     *
+     * @param concurrency number of concurrent requests
+     * @return pool settings
+     */
+    public static HttpClientPoolSettings forConcurrency(int concurrency) {
+        HttpClientPoolSettings poolSettings = new HttpClientPoolSettings();
+        poolSettings.setMaxTotal(concurrency);
+        poolSettings.setMaxPerRoute(concurrency);
+        return poolSettings;
+    }
+
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    public void setMaxTotal(int maxTotal) {
+        this.maxTotal = maxTotal;
+    }
+
+    public int getMaxPerRoute() {
+        return maxPerRoute;
+    }
+
+    public void setMaxPerRoute(int maxPerRoute) {
+        this.maxPerRoute = maxPerRoute;
+    }
+
+    /**
+     * Keep-alive used when the server does not send one, a shorter server keep-alive always wins.
+     *
+     * @return keep-alive in milliseconds
+     */
+    public long getKeepAliveMillis() {
+        return keepAliveMillis;
+    }
+
+    public void setKeepAliveMillis(long keepAliveMillis) {
+        this.keepAliveMillis = keepAliveMillis;
+    }
+
+    /**
+     * Connections idle for longer than this are closed by a background thread, 0 or less disables eviction.
+     *
+     * @return max idle time in milliseconds
+     */
+    public long getIdleEvictionMillis() {
+        return idleEvictionMillis;
+    }
+
+    public void setIdleEvictionMillis(long idleEvictionMillis) {
+        this.idleEvictionMillis = idleEvictionMillis;
+    }
+
+    /**
+     * Total time to live of a pooled connection, 0 or less means no limit.
+     *
+     * @return time to live in milliseconds
+     */
+    public long getTimeToLiveMillis() {
+        return timeToLiveMillis;
+    }
+
+    public void setTimeToLiveMillis(long timeToLiveMillis) {
+        this.timeToLiveMillis = timeToLiveMillis;
+    }
+
+    /**
+     * Max number of requests of the non-blocking client waiting for a connection, further requests fail at once. 0 or less
+     * means twice {@link #getMaxPerRoute()}. The blocking client needs no such limit, its waiting requests hold threads.
+     *
+     * @return max number of pending connection acquires
+     */
+    public int getMaxPendingAcquires() {
+        return maxPendingAcquires > 0 ? maxPendingAcquires : 2 * maxPerRoute;
+    }
+
+    public void setMaxPendingAcquires(int maxPendingAcquires) {
+        this.maxPendingAcquires = maxPendingAcquires;
+    }
+
+    /**
+     * Time a request of the non-blocking client waits for a connection before it fails.
+     *
+     * @return pending acquire timeout in milliseconds
+     */
+    public long getPendingAcquireTimeoutMillis() {
+        return pendingAcquireTimeoutMillis;
+    }
+
+    public void setPendingAcquireTimeoutMillis(long pendingAcquireTimeoutMillis) {
+        this.pendingAcquireTimeoutMillis = pendingAcquireTimeoutMillis;
+    }
+}
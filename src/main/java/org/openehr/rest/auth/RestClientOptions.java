@@ -0,0 +1,70 @@
+/*
+ * Copyright 2020-2021 Better Ltd (www.better.care)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.openehr.rest.auth;
+
+import org.openehr.rest.metrics.OpenEhrClientMetrics;
+
+import javax.annotation.Nullable;
+
+/**
+ * Optional settings of the HTTP client created by {@link AuthUtils}. Without any, requests go through the default client
+ * (2 connections per route), are not timed and request bodies are buffered.
+ *
+ * @author Dusan Markovic
+ */
+public class RestClientOptions {
+    private HttpClientPoolSettings poolSettings;
+    private OpenEhrClientMetrics metrics;
+    private boolean bufferRequestBody = true;
+
+    /**
+     * Sends requests (with or without authentication) through a pooled Apache HTTP client.
+     */
+    public RestClientOptions poolSettings(@Nullable HttpClientPoolSettings poolSettings) {
+        this.poolSettings = poolSettings;
+        return this;
+    }
+
+    /**
+     * Times requests and exposes the connection pool (if pooled) as gauges, see {@link OpenEhrClientMetrics}.
+     */
+    public RestClientOptions metrics(@Nullable OpenEhrClientMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * With false, request bodies are written straight to the connection, which keeps memory flat for large uploads.
+     * Request interceptors still buffer the body, so a rest template that streams must not have any.
+     */
+    public RestClientOptions bufferRequestBody(boolean bufferRequestBody) {
+        this.bufferRequestBody = bufferRequestBody;
+        return this;
+    }
+
+    @Nullable
+    public HttpClientPoolSettings getPoolSettings() {
+        return poolSettings;
+    }
+
+    @Nullable
+    public OpenEhrClientMetrics getMetrics() {
+        return metrics;
+    }
+
+    public boolean isBufferRequestBody() {
+        return bufferRequestBody;
+    }
+}
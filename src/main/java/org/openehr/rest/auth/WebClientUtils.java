@@ -0,0 +1,91 @@
+/*
+ * Copyright 2020-2021 Better Ltd (www.better.care)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.openehr.rest.auth;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeStrategies;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.net.URI;
+import java.time.Duration;
+
+/**
+ * Non-blocking counterpart of {@link AuthUtils#createRestTemplate}: a {@link WebClient} on Reactor Netty with a bounded
+ * connection pool, JSON read and written with the given {@link ObjectMapper} and the default JAXB and String codecs.
+ * Requires {@code spring-boot-starter-webflux} on the classpath.
+ *
+ * @author Dusan Markovic
+ */
+public class WebClientUtils {
+    private static final int MAX_IN_MEMORY_SIZE = 16 * 1024 * 1024;
+
+    public static WebClient createWebClient(
+            URI uri, String username, String password,
+            HttpClientPoolSettings poolSettings,
+            ObjectMapper objectMapper) {
+        ExchangeStrategies exchangeStrategies = ExchangeStrategies.builder()
+                .codecs(configurer -> {
+                    configurer.defaultCodecs().maxInMemorySize(MAX_IN_MEMORY_SIZE);
+                    configurer.defaultCodecs().jackson2JsonEncoder(new Jackson2JsonEncoder(objectMapper, MediaType.APPLICATION_JSON));
+                    configurer.defaultCodecs().jackson2JsonDecoder(new Jackson2JsonDecoder(objectMapper, MediaType.APPLICATION_JSON));
+                })
+                .build();
+
+        WebClient.Builder builder = WebClient.builder()
+                .baseUrl(uri.toString())
+                .clientConnector(new ReactorClientHttpConnector(HttpClient.create(createConnectionProvider(poolSettings))))
+                .exchangeStrategies(exchangeStrategies);
+        if (username != null) {
+            builder.filter(basicAuthentication(username, password));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Adds a Basic {@code Authorization} header, encoded once, to every request.
+     *
+     * @param username username
+     * @param password password
+     * @return exchange filter
+     */
+    public static ExchangeFilterFunction basicAuthentication(String username, String password) {
+        String authorizationHeader = "Basic " + HttpHeaders.encodeBasicAuth(username, password, null);
+        return (request, next) -> next.exchange(
+                ClientRequest.from(request).headers(headers -> headers.set(HttpHeaders.AUTHORIZATION, authorizationHeader)).build());
+    }
+
+    protected static ConnectionProvider createConnectionProvider(HttpClientPoolSettings poolSettings) {
+        HttpClientPoolSettings settings = poolSettings == null ? new HttpClientPoolSettings() : poolSettings;
+        // reactor netty pools connections per remote host, which is what max per route limits for the blocking client
+        ConnectionProvider.Builder builder = ConnectionProvider.builder("openehr-rest")
+                .maxConnections(settings.getMaxPerRoute())
+                .pendingAcquireMaxCount(settings.getMaxPendingAcquires())
+                .pendingAcquireTimeout(Duration.ofMillis(settings.getPendingAcquireTimeoutMillis()))
+                .maxIdleTime(Duration.ofMillis(settings.getKeepAliveMillis()));
+        if (settings.getTimeToLiveMillis() > 0L) {
+            builder.maxLifeTime(Duration.ofMillis(settings.getTimeToLiveMillis()));
+        }
+        return builder.build();
+    }
+}
@@ -1,26 +1,44 @@
 package org.openehr.rest.json;
 
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.SerializerProvider;
 import com.fasterxml.jackson.databind.jsontype.TypeResolverBuilder;
 import com.fasterxml.jackson.datatype.joda.JodaModule;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
+import org.openehr.utils.RmTypeRegistry;
+
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author Dusan Markovic
  */
 public class OpenEhrObjectMapper extends ObjectMapper {
     private static final long serialVersionUID = 34655941859371045L;
-    protected static final TypeResolverBuilder<?> TYPE_RESOLVER_BUILDER = new RmTypeResolverBuilder(ObjectMapper.DefaultTyping.NON_FINAL)
-            .init(JsonTypeInfo.Id.CLASS, null)
-            .typeProperty("_type")
-            .inclusion(JsonTypeInfo.As.PROPERTY);
+    protected static final TypeResolverBuilder<?> TYPE_RESOLVER_BUILDER = createTypeResolverBuilder(false);
+    protected static final TypeResolverBuilder<?> INFERRING_TYPE_RESOLVER_BUILDER = createTypeResolverBuilder(true);
+
+    private final boolean inferRmTypes;
+    private volatile boolean prewarmed;
 
     public OpenEhrObjectMapper() {
-        setDefaultTyping(TYPE_RESOLVER_BUILDER);
+        this(false);
+    }
+
+    /**
+     * @param inferRmTypes if true, RM objects are deserialized as their declared type when {@code _type} is not the first
+     *                     property and no other RM type extends the declared one, instead of buffering the object
+     * @see RmTypeResolverBuilder#inferRmTypes(boolean)
+     */
+    public OpenEhrObjectMapper(boolean inferRmTypes) {
+        this.inferRmTypes = inferRmTypes;
+        setDefaultTyping(getTypeResolverBuilder());
         registerModule(new JodaModule());
         registerModule(new JavaTimeModule());
         registerModule(new AfterburnerModule());
@@ -32,7 +50,55 @@ public class OpenEhrObjectMapper extends ObjectMapper {
     }
 
     protected OpenEhrObjectMapper(ObjectMapper src) {
+        this(src, false);
+    }
+
+    protected OpenEhrObjectMapper(ObjectMapper src, boolean inferRmTypes) {
         super(src);
+        this.inferRmTypes = inferRmTypes;
+    }
+
+    private static TypeResolverBuilder<?> createTypeResolverBuilder(boolean inferRmTypes) {
+        return new RmTypeResolverBuilder(ObjectMapper.DefaultTyping.NON_FINAL)
+                .inferRmTypes(inferRmTypes)
+                .init(JsonTypeInfo.Id.CLASS, null)
+                .typeProperty("_type")
+                .inclusion(JsonTypeInfo.As.PROPERTY);
+    }
+
+    protected TypeResolverBuilder<?> getTypeResolverBuilder() {
+        return inferRmTypes ? INFERRING_TYPE_RESOLVER_BUILDER : TYPE_RESOLVER_BUILDER;
+    }
+
+    /**
+     * Creates and caches serializers, deserializers and type resolvers for all RM classes, so that the first request
+     * for some RM type doesn't pay for bean introspection and bytecode generation. Configure the mapper first, the caches
+     * are built for its configuration at the time. A {@link #copy()} starts with empty caches of its own and can be
+     * prewarmed again.
+     *
+     * @return time spent in milliseconds
+     */
+    public long prewarm() {
+        long start = System.nanoTime();
+        OpenEhrPropertyNamingStrategy.warmUp(this);
+
+        SerializerProvider serializerProvider = getSerializerProviderInstance();
+        DeserializationContext deserializationContext = createDeserializationContext(null, getDeserializationConfig());
+        for (Class<?> rmClass : RmTypeRegistry.getInstance().getRmClasses()) {
+            JavaType type = constructType(rmClass);
+            try {
+                serializerProvider.findTypedValueSerializer(type, true, null);
+                _findRootDeserializer(deserializationContext, type);
+            } catch (JsonMappingException ignored) {
+                // not a bean, will fail the same way when used
+            }
+        }
+        prewarmed = true;
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    public boolean isPrewarmed() {
+        return prewarmed;
     }
 
     /**
@@ -42,8 +108,8 @@ public class OpenEhrObjectMapper extends ObjectMapper {
      */
     @Override
     public ObjectMapper copy() {
-        ObjectMapper copy = new OpenEhrObjectMapper(this);
-        copy.setDefaultTyping(TYPE_RESOLVER_BUILDER);
+        OpenEhrObjectMapper copy = new OpenEhrObjectMapper(this, inferRmTypes);
+        copy.setDefaultTyping(getTypeResolverBuilder());
         copy.configure(DeserializationFeature.FAIL_ON_INVALID_SUBTYPE, false);
         copy.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
         copy.setPropertyNamingStrategy(getSerializationConfig().getPropertyNamingStrategy());
@@ -1,5 +1,7 @@
 package org.openehr.rest.json;
 
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.PropertyNamingStrategy;
 import com.fasterxml.jackson.databind.cfg.MapperConfig;
 import com.fasterxml.jackson.databind.introspect.AnnotatedField;
@@ -8,23 +10,47 @@ import com.nedap.archie.rm.RMObject;
 import com.nedap.archie.rm.changecontrol.VersionedObject;
 import com.nedap.archie.rm.ehr.Ehr;
 import com.nedap.archie.rm.ehr.EhrStatus;
+import org.openehr.utils.RmTypeRegistry;
+import org.openehr.utils.Utils;
 
 import javax.xml.bind.annotation.XmlAttribute;
 import javax.xml.bind.annotation.XmlElement;
 import java.lang.annotation.Annotation;
-
-import static org.openehr.utils.Utils.getAttributeForField;
+import java.lang.reflect.Member;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * @author Dusan Markovic
  */
 public class OpenEhrPropertyNamingStrategy extends PropertyNamingStrategy {
     private static final long serialVersionUID = 1L;
+    private static final String XML_ELEMENT_DEFAULT_NAME = getDefaultName(XmlElement.class);
+    private static final String XML_ATTRIBUTE_DEFAULT_NAME = getDefaultName(XmlAttribute.class);
+
+    // resolved names are shared by all instances and mapper copies, empty string means there is no explicit xml name
+    private static final ConcurrentMap<Member, String> XML_NAMES = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, String> FIELD_NAMES = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Class<?>, Boolean> RM_CLASSES = new ConcurrentHashMap<>();
+
+    /**
+     * Resolves property names of all RM classes up front, so that later introspection (also by other mappers) only hits the cache.
+     *
+     * @param objectMapper object mapper that uses this naming strategy
+     */
+    public static void warmUp(ObjectMapper objectMapper) {
+        for (Class<?> rmClass : RmTypeRegistry.getInstance().getRmClasses()) {
+            JavaType type = objectMapper.constructType(rmClass);
+            objectMapper.getSerializationConfig().introspect(type).findProperties();
+            objectMapper.getDeserializationConfig().introspect(type).findProperties();
+        }
+    }
 
     @Override
     public String nameForField(MapperConfig<?> config, AnnotatedField field, String defaultName) {
         if (field != null && field.getDeclaringClass() != null && isRmClass(field.getDeclaringClass())) {
-            return getAttributeForField(defaultName);
+            String name = FIELD_NAMES.get(defaultName);
+            return name == null ? FIELD_NAMES.computeIfAbsent(defaultName, Utils::getAttributeForField) : name;
         }
         return super.nameForField(config, field, defaultName);
     }
@@ -32,12 +58,7 @@ public class OpenEhrPropertyNamingStrategy extends PropertyNamingStrategy {
     @Override
     public String nameForGetterMethod(MapperConfig<?> config, AnnotatedMethod method, String defaultName) {
         if (method != null && method.getDeclaringClass() != null && isRmClass(method.getDeclaringClass())) {
-            String xmlElementName = getXmlElementName(method);
-            if (xmlElementName == null) {
-                String xmlAttributeName = getXmlAttributeName(method);
-                return xmlAttributeName == null ? defaultName : xmlAttributeName;
-            }
-            return xmlElementName;
+            return getXmlName(method, defaultName);
         }
         return super.nameForGetterMethod(config, method, defaultName);
     }
@@ -45,42 +66,55 @@ public class OpenEhrPropertyNamingStrategy extends PropertyNamingStrategy {
     @Override
     public String nameForSetterMethod(MapperConfig<?> config, AnnotatedMethod method, String defaultName) {
         if (method != null && method.getDeclaringClass() != null && isRmClass(method.getDeclaringClass())) {
-            String xmlElementName = getXmlElementName(method);
-            if (xmlElementName == null) {
-                String xmlAttributeName = getXmlAttributeName(method);
-                return xmlAttributeName == null ? defaultName : xmlAttributeName;
-            }
-            return xmlElementName;
+            return getXmlName(method, defaultName);
         }
         return super.nameForSetterMethod(config, method, defaultName);
     }
 
-    private String getXmlElementName(AnnotatedMethod method) {
-        Annotation annotation = method.getAnnotation(XmlElement.class);
-        try {
-            return annotation == null || annotation.annotationType().getDeclaredMethod("name").getDefaultValue().equals(((XmlElement)annotation).name()) ?
-                    null :
-                    ((XmlElement)annotation).name();
-        } catch (NoSuchMethodException e) {
-            return null;
+    private String getXmlName(AnnotatedMethod method, String defaultName) {
+        String xmlName = XML_NAMES.get(method.getMember());
+        if (xmlName == null) {
+            xmlName = XML_NAMES.computeIfAbsent(method.getMember(), member -> resolveXmlName(method));
         }
+        return xmlName.isEmpty() ? defaultName : xmlName;
     }
 
-    private String getXmlAttributeName(AnnotatedMethod method) {
-        Annotation annotation = method.getAnnotation(XmlAttribute.class);
-        try {
-            return annotation == null || annotation.annotationType().getDeclaredMethod("name").getDefaultValue().equals(((XmlAttribute)annotation).name()) ?
-                    null :
-                    ((XmlAttribute)annotation).name();
-        } catch (NoSuchMethodException e) {
-            return null;
+    private String resolveXmlName(AnnotatedMethod method) {
+        String xmlElementName = getXmlElementName(method);
+        if (xmlElementName == null) {
+            String xmlAttributeName = getXmlAttributeName(method);
+            return xmlAttributeName == null ? "" : xmlAttributeName;
         }
+        return xmlElementName;
+    }
+
+    private String getXmlElementName(AnnotatedMethod method) {
+        XmlElement annotation = method.getAnnotation(XmlElement.class);
+        return annotation == null || XML_ELEMENT_DEFAULT_NAME.equals(annotation.name()) ? null : annotation.name();
+    }
+
+    private String getXmlAttributeName(AnnotatedMethod method) {
+        XmlAttribute annotation = method.getAnnotation(XmlAttribute.class);
+        return annotation == null || XML_ATTRIBUTE_DEFAULT_NAME.equals(annotation.name()) ? null : annotation.name();
     }
 
     private boolean isRmClass(Class<?> declaringClass) {
-        return RMObject.class.isAssignableFrom(declaringClass)
-                || Ehr.class.isAssignableFrom(declaringClass)
-                || EhrStatus.class.isAssignableFrom(declaringClass)
-                || VersionedObject.class.isAssignableFrom(declaringClass);
+        Boolean rmClass = RM_CLASSES.get(declaringClass);
+        if (rmClass == null) {
+            rmClass = RMObject.class.isAssignableFrom(declaringClass)
+                    || Ehr.class.isAssignableFrom(declaringClass)
+                    || EhrStatus.class.isAssignableFrom(declaringClass)
+                    || VersionedObject.class.isAssignableFrom(declaringClass);
+            RM_CLASSES.put(declaringClass, rmClass);
+        }
+        return rmClass;
+    }
+
+    private static String getDefaultName(Class<? extends Annotation> annotationType) {
+        try {
+            return (String)annotationType.getDeclaredMethod("name").getDefaultValue();
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
     }
 }
@@ -0,0 +1,263 @@
+package org.openehr.rest.json;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.openehr.data.OpenEhrColumnarQueryResponse;
+import org.openehr.data.OpenEhrQueryResponse;
+import org.openehr.data.OpenEhrQueryResponse.OpenEhrColumnData;
+import org.openehr.data.OpenEhrRequestMetaData;
+import org.springframework.web.client.ResponseExtractor;
+
+import javax.annotation.Nonnull;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Streaming alternative to reading {@link OpenEhrQueryResponse}: meta data and columns are read up front, rows are then
+ * pulled from the parser one at a time, so the whole result set is never held in memory. Rows are only available when
+ * they follow the other fields (which is how the result set is serialized). Cells are read as {@link Object} unless a
+ * type is set for their column.
+ *
+ * @author Dusan Markovic
+ */
+public class OpenEhrQueryResponseReader implements Closeable {
+    private static final TypeReference<List<OpenEhrColumnData>> COLUMNS_TYPE = new TypeReference<List<OpenEhrColumnData>>() {
+    };
+
+    private final ObjectMapper objectMapper;
+    private final JsonParser parser;
+    private final Map<Integer, JavaType> columnTypes = new HashMap<>();
+
+    private OpenEhrRequestMetaData meta;
+    private String name;
+    private String q;
+    private List<OpenEhrColumnData> columns;
+    private boolean hasRows;
+    private boolean rowsStarted;
+    private ObjectReader objectReader;
+    private ObjectReader[] cellReaders;
+
+    public OpenEhrQueryResponseReader(@Nonnull ObjectMapper objectMapper, @Nonnull InputStream inputStream) throws IOException {
+        this(objectMapper, objectMapper.getFactory().createParser(inputStream));
+    }
+
+    public OpenEhrQueryResponseReader(@Nonnull ObjectMapper objectMapper, @Nonnull JsonParser parser) throws IOException {
+        this.objectMapper = objectMapper;
+        this.parser = parser;
+        readHeader();
+    }
+
+    /**
+     * Creates a {@link ResponseExtractor} for {@code RestTemplate.execute()} that hands the reader to {@code handler} while
+     * the response body is still open.
+     *
+     * @param objectMapper object mapper used to read the fields and cells
+     * @param handler      consumes the reader, typically by iterating the rows
+     * @param <T>          result type
+     * @return response extractor
+     */
+    public static <T> ResponseExtractor<T> responseExtractor(
+            @Nonnull ObjectMapper objectMapper,
+            @Nonnull Function<OpenEhrQueryResponseReader, T> handler) {
+        return response -> {
+            try (OpenEhrQueryResponseReader reader = new OpenEhrQueryResponseReader(objectMapper, response.getBody())) {
+                return handler.apply(reader);
+            }
+        };
+    }
+
+    public OpenEhrRequestMetaData getMeta() {
+        return meta;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getQ() {
+        return q;
+    }
+
+    public List<OpenEhrColumnData> getColumns() {
+        return columns == null ? Collections.emptyList() : columns;
+    }
+
+    public OpenEhrQueryResponseReader setColumnType(int columnIndex, @Nonnull Class<?> type) {
+        return setColumnType(columnIndex, objectMapper.constructType(type));
+    }
+
+    public OpenEhrQueryResponseReader setColumnType(int columnIndex, @Nonnull JavaType type) {
+        if (rowsStarted) {
+            throw new IllegalStateException("Column types must be set before the rows are read.");
+        }
+        columnTypes.put(columnIndex, type);
+        return this;
+    }
+
+    public OpenEhrQueryResponseReader setColumnType(@Nonnull String columnName, @Nonnull Class<?> type) {
+        List<OpenEhrColumnData> columnList = getColumns();
+        for (int i = 0; i < columnList.size(); i++) {
+            if (columnName.equals(columnList.get(i).getName())) {
+                return setColumnType(i, type);
+            }
+        }
+        throw new IllegalArgumentException("Unknown column: " + columnName);
+    }
+
+    /**
+     * Returns the rows, read from the parser as the iterator advances. It can only be iterated once.
+     *
+     * @return row iterator
+     * @throws UncheckedIOException if a row cannot be read
+     */
+    public Iterator<List<Object>> rows() {
+        if (rowsStarted) {
+            throw new IllegalStateException("Rows have already been read.");
+        }
+        rowsStarted = true;
+        return new RowIterator();
+    }
+
+    /**
+     * Same as {@link #rows()}, closing the stream closes the reader.
+     *
+     * @return row stream
+     */
+    public Stream<List<Object>> rowStream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(rows(), Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> {
+                    try {
+                        close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    /**
+     * Reads the remaining rows into {@link OpenEhrColumnarQueryResponse}, column types set on this reader are respected.
+     *
+     * @return columnar response
+     * @throws UncheckedIOException if a row cannot be read
+     */
+    public OpenEhrColumnarQueryResponse readColumnar() {
+        return OpenEhrColumnarQueryResponse.of(meta, name, q, columns, rows());
+    }
+
+    @Override
+    public void close() throws IOException {
+        parser.close();
+    }
+
+    private void readHeader() throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == null) {
+            return;
+        }
+        if (token != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "Expected start of query response object, got " + token);
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            token = parser.nextToken();
+            switch (fieldName) {
+                case "meta":
+                    meta = objectMapper.readValue(parser, OpenEhrRequestMetaData.class);
+                    break;
+                case "name":
+                    name = parser.getValueAsString();
+                    break;
+                case "q":
+                    q = parser.getValueAsString();
+                    break;
+                case "columns":
+                    columns = objectMapper.readValue(parser, COLUMNS_TYPE);
+                    break;
+                case "rows":
+                    if (token == JsonToken.START_ARRAY) {
+                        hasRows = true;
+                        return;
+                    }
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+    }
+
+    private List<Object> readRow() throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == JsonToken.END_ARRAY) {
+            hasRows = false;
+            return null;
+        }
+        if (token != JsonToken.START_ARRAY) {
+            throw new JsonParseException(parser, "Expected start of row array, got " + token);
+        }
+        if (cellReaders == null) {
+            cellReaders = createCellReaders();
+        }
+        List<Object> row = new ArrayList<>(cellReaders.length);
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            int index = row.size();
+            row.add((index < cellReaders.length ? cellReaders[index] : objectReader).readValue(parser));
+        }
+        return row;
+    }
+
+    private ObjectReader[] createCellReaders() {
+        objectReader = objectMapper.readerFor(Object.class);
+        int size = Math.max(getColumns().size(), columnTypes.keySet().stream().mapToInt(index -> index + 1).max().orElse(0));
+        ObjectReader[] readers = new ObjectReader[size];
+        for (int i = 0; i < readers.length; i++) {
+            JavaType type = columnTypes.get(i);
+            readers[i] = type == null ? objectReader : objectMapper.readerFor(type);
+        }
+        return readers;
+    }
+
+    private class RowIterator implements Iterator<List<Object>> {
+        private List<Object> next;
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && hasRows) {
+                try {
+                    next = readRow();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public List<Object> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            List<Object> row = next;
+            next = null;
+            return row;
+        }
+    }
+}
@@ -5,33 +5,71 @@ import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.util.JsonParserSequence;
 import com.fasterxml.jackson.databind.BeanProperty;
 import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonDeserializer;
 import com.fasterxml.jackson.databind.jsontype.TypeDeserializer;
 import com.fasterxml.jackson.databind.jsontype.impl.AsPropertyTypeDeserializer;
 import com.fasterxml.jackson.databind.util.TokenBuffer;
 import com.nedap.archie.rm.RMObject;
+import org.openehr.utils.RmTypeRegistry;
 
 import java.io.IOException;
 import java.util.Collection;
 import java.util.Map;
-
-import static org.openehr.utils.Utils.getRmTypeName;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * @author Dusan Markovic
  */
 public class RmAwareAsPropertyTypeDeserializer extends AsPropertyTypeDeserializer {
     private static final long serialVersionUID = 1L;
+    private static final LongAdder BUFFERED_OBJECTS = new LongAdder();
+    private static final LongAdder INFERRED_OBJECTS = new LongAdder();
+
+    private final boolean inferRmTypes;
+    private final String inferredTypeId;
 
     public RmAwareAsPropertyTypeDeserializer(AsPropertyTypeDeserializer src, BeanProperty property) {
+        this(src, property, false);
+    }
+
+    /**
+     * @param inferRmTypes if true, objects declared with an RM type that no other RM type extends are deserialized
+     *                     directly as the declared type when {@code _type} is not the first property, instead of
+     *                     buffering all properties before {@code _type}
+     */
+    public RmAwareAsPropertyTypeDeserializer(AsPropertyTypeDeserializer src, BeanProperty property, boolean inferRmTypes) {
         super(src, property);
+        this.inferRmTypes = inferRmTypes;
+        Class<?> rawClass = baseType().getRawClass();
+        RmTypeRegistry registry = RmTypeRegistry.getInstance();
+        inferredTypeId = inferRmTypes && !_typeIdVisible && registry.isFinalRmClass(rawClass) ? registry.getRmTypeName(rawClass) : null;
+    }
+
+    /**
+     * @return number of objects whose properties had to be buffered because {@code _type} was not the first property
+     */
+    public static long getBufferedObjectCount() {
+        return BUFFERED_OBJECTS.sum();
+    }
+
+    /**
+     * @return number of objects deserialized with the RM type inferred from the declared type
+     */
+    public static long getInferredObjectCount() {
+        return INFERRED_OBJECTS.sum();
+    }
+
+    public static void resetCounters() {
+        BUFFERED_OBJECTS.reset();
+        INFERRED_OBJECTS.reset();
     }
 
     @Override
     public TypeDeserializer forProperty(BeanProperty prop) {
         TypeDeserializer typeDeserializer = super.forProperty(prop);
         if (typeDeserializer instanceof AsPropertyTypeDeserializer) {
-            return new RmAwareAsPropertyTypeDeserializer((AsPropertyTypeDeserializer)typeDeserializer, null);
+            return new RmAwareAsPropertyTypeDeserializer((AsPropertyTypeDeserializer)typeDeserializer, null, inferRmTypes);
         }
         return typeDeserializer;
     }
@@ -52,6 +90,14 @@ public class RmAwareAsPropertyTypeDeserializer extends AsPropertyTypeDeserialize
         } else if (t != JsonToken.FIELD_NAME) {
             return _deserializeTypedUsingDefaultImpl(p, ctxt, null);
         }
+        if (inferredTypeId != null
+                && t == JsonToken.FIELD_NAME
+                && !_typePropertyName.equals(p.getCurrentName())
+                && !ctxt.isEnabled(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)) {
+            // _type (if present later) is skipped as an unknown property
+            INFERRED_OBJECTS.increment();
+            return _findDeserializer(ctxt, inferredTypeId).deserialize(p, ctxt);
+        }
         TokenBuffer tb = null;
 
         for (; t == JsonToken.FIELD_NAME; t = p.nextToken()) {
@@ -63,6 +109,7 @@ public class RmAwareAsPropertyTypeDeserializer extends AsPropertyTypeDeserialize
 
             if (tb == null) {
                 tb = new TokenBuffer(p, ctxt);
+                BUFFERED_OBJECTS.increment();
             }
             tb.writeFieldName(name);
             tb.copyCurrentStructure(p);
@@ -81,7 +128,7 @@ public class RmAwareAsPropertyTypeDeserializer extends AsPropertyTypeDeserialize
                 // must move to point to the first token:
                 p.nextToken();
             }
-            return _deserializeTypedForId(p, ctxt, tb, getRmTypeName(rawClass));
+            return _deserializeTypedForId(p, ctxt, tb, RmTypeRegistry.getInstance().getRmTypeName(rawClass));
         }
         return _deserializeTypedUsingDefaultImpl(p, ctxt, tb);
     }
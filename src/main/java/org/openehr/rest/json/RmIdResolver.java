@@ -7,32 +7,27 @@ import com.fasterxml.jackson.databind.jsontype.TypeIdResolver;
 import com.fasterxml.jackson.databind.jsontype.impl.ClassNameIdResolver;
 import com.fasterxml.jackson.databind.jsontype.impl.LaissezFaireSubTypeValidator;
 import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.nedap.archie.rm.RMObject;
+import org.openehr.utils.RmTypeRegistry;
 
-import javax.annotation.Nonnull;
 import java.io.IOException;
-import java.util.concurrent.ExecutionException;
-
-import static org.openehr.utils.Utils.getRmClass;
-import static org.openehr.utils.Utils.getRmTypeName;
 
 /**
  * @author Dusan Markovic
  */
 public class RmIdResolver implements TypeIdResolver {
+    private static final RmTypeRegistry RM_TYPE_REGISTRY = RmTypeRegistry.getInstance();
+    private static final long UNKNOWN_TYPE_IDS_MAX_SIZE = 1000L;
+    // resolvers are weakly referenced by type factory, so short-lived mappers don't leak
+    private static final LoadingCache<TypeFactory, FallbackIdResolver> FALLBACK_ID_RESOLVERS = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build(CacheLoader.from(FallbackIdResolver::new));
+
     private final TypeFactory typeFactory;
-    @SuppressWarnings("AnonymousInnerClassMayBeStatic")
-    private final LoadingCache<Class<?>, String> rmClassNames = CacheBuilder.newBuilder()
-            .maximumSize(1000L)
-            .build(new CacheLoader<>() {
-                @Override
-                public String load(@Nonnull Class<?> clazz) {
-                    return getRmTypeName(clazz);
-                }
-            });
 
     private JavaType baseType;
 
@@ -58,17 +53,11 @@ public class RmIdResolver implements TypeIdResolver {
     @Override
     public String idFromValueAndType(Object value, Class<?> suggestedType) {
         if (RMObject.class.isAssignableFrom(suggestedType) || RMObject.class.isAssignableFrom(value.getClass())) {
-            try {
-                return rmClassNames.get(suggestedType);
-            } catch (ExecutionException e) {
-                return getRmTypeName(suggestedType);
-            }
+            return RM_TYPE_REGISTRY.getRmTypeName(suggestedType);
         }
 
         // Should really never happen
-        ClassNameIdResolver classNameIdResolver = new ClassNameIdResolver(
-                typeFactory.constructType(value.getClass()), typeFactory, LaissezFaireSubTypeValidator.instance);
-        return classNameIdResolver.idFromValueAndType(value, suggestedType);
+        return FALLBACK_ID_RESOLVERS.getUnchecked(typeFactory).classNameIdResolver.idFromValueAndType(value, suggestedType);
     }
 
     @Override
@@ -78,15 +67,12 @@ public class RmIdResolver implements TypeIdResolver {
 
     @Override
     public JavaType typeFromId(DatabindContext context, String id) throws IOException {
-        try {
-            Class<? extends RMObject> rmClass = getRmClass(id);
+        Class<?> rmClass = RM_TYPE_REGISTRY.getRmClass(id);
+        if (rmClass != null) {
             return typeFactory.constructType(rmClass);
-        } catch (ClassNotFoundException ignored) {
-            // Now try with the regular class type serializer
-            ClassNameIdResolver classNameIdResolver = new ClassNameIdResolver(
-                    null, context != null ? context.getTypeFactory() : typeFactory, LaissezFaireSubTypeValidator.instance);
-            return classNameIdResolver.typeFromId(context, id);
         }
+        // Now try with the regular class type serializer
+        return FALLBACK_ID_RESOLVERS.getUnchecked(context != null ? context.getTypeFactory() : typeFactory).typeFromId(context, id);
     }
 
     @Override
@@ -98,4 +84,30 @@ public class RmIdResolver implements TypeIdResolver {
     public Id getMechanism() {
         return Id.CUSTOM;
     }
+
+    /**
+     * Shared {@link ClassNameIdResolver} for one type factory with a bounded cache of type ids that could not be resolved,
+     * so repeated unknown ids don't pay for class loading and exceptions every time.
+     */
+    private static final class FallbackIdResolver {
+        private final ClassNameIdResolver classNameIdResolver;
+        private final Cache<String, Boolean> unknownTypeIds = CacheBuilder.newBuilder()
+                .maximumSize(UNKNOWN_TYPE_IDS_MAX_SIZE)
+                .build();
+
+        private FallbackIdResolver(TypeFactory typeFactory) {
+            classNameIdResolver = new ClassNameIdResolver(null, typeFactory, LaissezFaireSubTypeValidator.instance);
+        }
+
+        private JavaType typeFromId(DatabindContext context, String id) throws IOException {
+            if (unknownTypeIds.getIfPresent(id) != null) {
+                return null;
+            }
+            JavaType type = classNameIdResolver.typeFromId(context, id);
+            if (type == null) {
+                unknownTypeIds.put(id, Boolean.TRUE);
+            }
+            return type;
+        }
+    }
 }
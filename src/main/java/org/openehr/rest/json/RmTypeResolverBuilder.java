@@ -25,15 +25,30 @@ import static com.fasterxml.jackson.annotation.JsonTypeInfo.Id.CLASS;
 public class RmTypeResolverBuilder extends ObjectMapper.DefaultTypeResolverBuilder {
     private static final long serialVersionUID = 1L;
 
+    private boolean inferRmTypes;
+
     public RmTypeResolverBuilder(ObjectMapper.DefaultTyping t) {
         super(t, LaissezFaireSubTypeValidator.instance);
     }
 
+    /**
+     * Enables deserialization of RM objects without buffering when {@code _type} is not the first property and the
+     * declared type is an RM type that no other RM type extends. Buffered objects are counted by
+     * {@link RmAwareAsPropertyTypeDeserializer#getBufferedObjectCount()}.
+     *
+     * @param inferRmTypes infer RM types from declared types
+     * @return this builder
+     */
+    public RmTypeResolverBuilder inferRmTypes(boolean inferRmTypes) {
+        this.inferRmTypes = inferRmTypes;
+        return this;
+    }
+
     @Override
     public TypeDeserializer buildTypeDeserializer(DeserializationConfig config, JavaType baseType, Collection<NamedType> subtypes) {
         TypeDeserializer typeDeserializer = super.buildTypeDeserializer(config, baseType, subtypes);
         if (typeDeserializer instanceof AsPropertyTypeDeserializer) {
-            return new RmAwareAsPropertyTypeDeserializer((AsPropertyTypeDeserializer)typeDeserializer, null);
+            return new RmAwareAsPropertyTypeDeserializer((AsPropertyTypeDeserializer)typeDeserializer, null, inferRmTypes);
         }
         return typeDeserializer;
     }
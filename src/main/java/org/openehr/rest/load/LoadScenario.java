@@ -0,0 +1,67 @@
+/*
+ * Copyright 2020-2021 Better Ltd (www.better.care)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.openehr.rest.load;
+
+import com.google.common.base.Preconditions;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Named request flow that {@link LoadTestRunner} picks with probability proportional to its weight, a scenario with
+ * weight 0 is never picked.
+ *
+ * @author Dusan Markovic
+ */
+public final class LoadScenario {
+    private static final Skipped SKIPPED = new Skipped();
+
+    private final String name;
+    private final int weight;
+    private final Runnable action;
+
+    public LoadScenario(@Nonnull String name, int weight, @Nonnull Runnable action) {
+        Preconditions.checkArgument(weight >= 0, "weight must not be negative");
+        this.name = name;
+        this.weight = weight;
+        this.action = action;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public Runnable getAction() {
+        return action;
+    }
+
+    /**
+     * Ends the current run of the action without recording it, e.g. when the data it needs is not there yet.
+     */
+    public static void skip() {
+        throw SKIPPED;
+    }
+
+    static final class Skipped extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private Skipped() {
+            super("Skipped", null, false, false);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2020-2021 Better Ltd (www.better.care)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.openehr.rest.load;
+
+import org.HdrHistogram.Histogram;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Result of a {@link LoadTestRunner} run, latencies are recorded in microseconds.
+ *
+ * @author Dusan Markovic
+ */
+public class LoadTestReport {
+    private final Duration elapsed;
+    private final List<ScenarioResult> scenarioResults;
+
+    public LoadTestReport(Duration elapsed, List<ScenarioResult> scenarioResults) {
+        this.elapsed = elapsed;
+        this.scenarioResults = scenarioResults;
+    }
+
+    public Duration getElapsed() {
+        return elapsed;
+    }
+
+    public List<ScenarioResult> getScenarioResults() {
+        return scenarioResults;
+    }
+
+    public double getThroughput(ScenarioResult result) {
+        return (result.getCount() + result.getErrorCount()) / (elapsed.toNanos() / 1_000_000_000.0d);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-24s %10s %8s %7s %10s %10s %10s %10s %10s%n",
+                                "scenario", "count", "errors", "err%", "req/s", "p50 ms", "p95 ms", "p99 ms", "max ms"));
+        for (ScenarioResult result : scenarioResults) {
+            sb.append(String.format("%-24s %10d %8d %7.2f %10.1f %10.2f %10.2f %10.2f %10.2f%n",
+                                    result.getName(),
+                                    result.getCount(),
+                                    result.getErrorCount(),
+                                    result.getErrorRate() * 100.0d,
+                                    getThroughput(result),
+                                    result.getPercentileMillis(50.0d),
+                                    result.getPercentileMillis(95.0d),
+                                    result.getPercentileMillis(99.0d),
+                                    result.getMaxMillis()));
+        }
+        sb.append("elapsed: ").append(elapsed.toMillis()).append(" ms");
+        return sb.toString();
+    }
+
+    public static class ScenarioResult {
+        private final String name;
+        private final Histogram histogram;
+        private final long errorCount;
+        private final String lastError;
+
+        public ScenarioResult(String name, Histogram histogram, long errorCount, String lastError) {
+            this.name = name;
+            this.histogram = histogram;
+            this.errorCount = errorCount;
+            this.lastError = lastError;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns latencies of successful runs in microseconds.
+         *
+         * @return histogram
+         */
+        public Histogram getHistogram() {
+            return histogram;
+        }
+
+        public long getCount() {
+            return histogram.getTotalCount();
+        }
+
+        public long getErrorCount() {
+            return errorCount;
+        }
+
+        public double getErrorRate() {
+            long total = getCount() + errorCount;
+            return total == 0L ? 0.0d : (double)errorCount / total;
+        }
+
+        public String getLastError() {
+            return lastError;
+        }
+
+        public double getPercentileMillis(double percentile) {
+            return histogram.getValueAtPercentile(percentile) / 1000.0d;
+        }
+
+        public double getMaxMillis() {
+            return histogram.getMaxValue() / 1000.0d;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2020-2021 Better Ltd (www.better.care)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.openehr.rest.load;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import org.HdrHistogram.Recorder;
+import org.openehr.utils.ClientExecutors;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs weighted {@link LoadScenario}s from {@code concurrency} workers for a fixed duration, optionally capped at a target
+ * rate, and reports throughput, latency percentiles and errors per scenario. Scenarios run during warm-up are not
+ * recorded. With a target rate, scenarios are started on a fixed schedule and latency is measured from the scheduled
+ * start, so time spent waiting for a worker when the server falls behind is included (no coordinated omission).
+ *
+ * @author Dusan Markovic
+ */
+public class LoadTestRunner {
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(10L);
+
+    private final List<LoadScenario> scenarios;
+    private final int[] cumulativeWeights;
+    private int concurrency = 8;
+    private double targetRps;
+    private Duration duration = Duration.ofMinutes(1L);
+    private Duration warmup = Duration.ZERO;
+    private boolean virtualThreads;
+
+    public LoadTestRunner(@Nonnull List<LoadScenario> scenarios) {
+        Preconditions.checkArgument(!scenarios.isEmpty(), "at least one scenario is required");
+        this.scenarios = ImmutableList.copyOf(scenarios);
+        cumulativeWeights = new int[scenarios.size()];
+        int total = 0;
+        for (int i = 0; i < scenarios.size(); i++) {
+            total += scenarios.get(i).getWeight();
+            cumulativeWeights[i] = total;
+        }
+        Preconditions.checkArgument(total > 0, "at least one scenario must have a positive weight");
+    }
+
+    public LoadTestRunner concurrency(int concurrency) {
+        Preconditions.checkArgument(concurrency > 0, "concurrency must be positive");
+        this.concurrency = concurrency;
+        return this;
+    }
+
+    /**
+     * @param targetRps number of scenarios scheduled per second over all workers, 0 for no limit
+     * @return this runner
+     */
+    public LoadTestRunner targetRps(double targetRps) {
+        Preconditions.checkArgument(targetRps >= 0.0d, "targetRps must not be negative");
+        this.targetRps = targetRps;
+        return this;
+    }
+
+    public LoadTestRunner duration(@Nonnull Duration duration) {
+        this.duration = duration;
+        return this;
+    }
+
+    public LoadTestRunner warmup(@Nonnull Duration warmup) {
+        this.warmup = warmup;
+        return this;
+    }
+
+    /**
+     * @param virtualThreads run workers on virtual threads when the JVM supports them
+     * @return this runner
+     */
+    public LoadTestRunner virtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+        return this;
+    }
+
+    public LoadTestReport run() throws InterruptedException {
+        List<Recorder> recorders = new ArrayList<>(scenarios.size());
+        List<LongAdder> errorCounts = new ArrayList<>(scenarios.size());
+        List<AtomicReference<Throwable>> lastErrors = new ArrayList<>(scenarios.size());
+        for (int i = 0; i < scenarios.size(); i++) {
+            recorders.add(new Recorder(HIGHEST_TRACKABLE_MICROS, 3));
+            errorCounts.add(new LongAdder());
+            lastErrors.add(new AtomicReference<>());
+        }
+        long intervalNanos = targetRps > 0.0d ? Math.max((long)(TimeUnit.SECONDS.toNanos(1L) / targetRps), 1L) : 0L;
+
+        long measureStart = System.nanoTime() + warmup.toNanos();
+        long end = measureStart + duration.toNanos();
+        AtomicLong nextStart = new AtomicLong(System.nanoTime());
+        ExecutorService executorService = ClientExecutors.newClientExecutor(virtualThreads, concurrency, "openehr-load");
+        try {
+            for (int worker = 0; worker < concurrency; worker++) {
+                executorService.execute(() -> {
+                    while (System.nanoTime() < end && !Thread.currentThread().isInterrupted()) {
+                        long start;
+                        if (intervalNanos > 0L) {
+                            // scheduled start, the latency includes any delay behind the schedule
+                            start = nextStart.getAndAdd(intervalNanos);
+                            if (start - end >= 0L || !awaitStart(start)) {
+                                break;
+                            }
+                        } else {
+                            start = System.nanoTime();
+                        }
+                        int index = pickScenario();
+                        try {
+                            scenarios.get(index).getAction().run();
+                            if (start - measureStart >= 0L) {
+                                recorders.get(index).recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start), HIGHEST_TRACKABLE_MICROS));
+                            }
+                        } catch (LoadScenario.Skipped e) {
+                            // neither a result nor an error
+                        } catch (Throwable e) {
+                            if (start - measureStart >= 0L) {
+                                errorCounts.get(index).increment();
+                                lastErrors.get(index).set(e);
+                            }
+                            if (e instanceof VirtualMachineError) {
+                                throw (VirtualMachineError)e;
+                            }
+                        }
+                    }
+                });
+            }
+            executorService.shutdown();
+            long timeoutNanos = Math.max(end - System.nanoTime(), 0L) + TimeUnit.MINUTES.toNanos(1L);
+            if (!executorService.awaitTermination(timeoutNanos, TimeUnit.NANOSECONDS)) {
+                executorService.shutdownNow();
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+        Duration elapsed = Duration.ofNanos(Math.max(Math.min(System.nanoTime(), end) - measureStart, 1L));
+
+        List<LoadTestReport.ScenarioResult> results = new ArrayList<>(scenarios.size());
+        for (int i = 0; i < scenarios.size(); i++) {
+            Throwable lastError = lastErrors.get(i).get();
+            results.add(new LoadTestReport.ScenarioResult(
+                    scenarios.get(i).getName(),
+                    recorders.get(i).getIntervalHistogram(),
+                    errorCounts.get(i).sum(),
+                    lastError == null ? null : lastError.toString()));
+        }
+        return new LoadTestReport(elapsed, results);
+    }
+
+    private static boolean awaitStart(long start) {
+        long remaining;
+        while ((remaining = start - System.nanoTime()) > 0L) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int pickScenario() {
+        int value = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (value < cumulativeWeights[i]) {
+                return i;
+            }
+        }
+        return cumulativeWeights.length - 1;
+    }
+}
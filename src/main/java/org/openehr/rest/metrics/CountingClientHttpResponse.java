@@ -0,0 +1,77 @@
+/*
+ * Copyright 2020-2021 Better Ltd (www.better.care)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.openehr.rest.metrics;
+
+import com.google.common.io.CountingInputStream;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.LongConsumer;
+
+/**
+ * Counts body bytes as they are read and reports the count when the response is closed.
+ *
+ * @author Dusan Markovic
+ */
+class CountingClientHttpResponse implements ClientHttpResponse {
+    private final ClientHttpResponse response;
+    private final LongConsumer onClose;
+    private CountingInputStream body;
+
+    CountingClientHttpResponse(ClientHttpResponse response, LongConsumer onClose) {
+        this.response = response;
+        this.onClose = onClose;
+    }
+
+    @Override
+    public InputStream getBody() throws IOException {
+        if (body == null) {
+            body = new CountingInputStream(response.getBody());
+        }
+        return body;
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+        return response.getHeaders();
+    }
+
+    @Override
+    public HttpStatus getStatusCode() throws IOException {
+        return response.getStatusCode();
+    }
+
+    @Override
+    public int getRawStatusCode() throws IOException {
+        return response.getRawStatusCode();
+    }
+
+    @Override
+    public String getStatusText() throws IOException {
+        return response.getStatusText();
+    }
+
+    @Override
+    public void close() {
+        try {
+            response.close();
+        } finally {
+            onClose.accept(body == null ? 0L : body.getCount());
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2020-2021 Better Ltd (www.better.care)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.openehr.rest.metrics;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import org.openehr.utils.OpenEhrConstants;
+
+import javax.annotation.Nonnull;
+import java.net.URI;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Maps request URIs back to OpenEHR REST endpoint templates (e.g. {@link OpenEhrConstants#GET_COMPOSITION_PATH}), so
+ * that metrics are kept per endpoint and not per EHR or composition. Paths that match no template get identifier-like
+ * segments replaced with {@code {id}}.
+ *
+ * @author Dusan Markovic
+ */
+public class EndpointTemplates {
+    public static final List<String> DEFAULT_TEMPLATES = ImmutableList.of(
+            "/ehr",
+            OpenEhrConstants.EHR_PATH,
+            "/ehr/{ehr_id}/ehr_status",
+            OpenEhrConstants.GET_EHR_STATUS_PATH,
+            "/ehr/{ehr_id}/versioned_ehr_status",
+            "/ehr/{ehr_id}/versioned_ehr_status/revision_history",
+            "/ehr/{ehr_id}/versioned_ehr_status/version",
+            OpenEhrConstants.GET_EHR_STATUS_VERSION_PATH,
+            OpenEhrConstants.POST_COMPOSITION_PATH,
+            OpenEhrConstants.GET_COMPOSITION_PATH,
+            "/ehr/{ehr_id}/versioned_composition/{versioned_object_uid}",
+            "/ehr/{ehr_id}/versioned_composition/{versioned_object_uid}/revision_history",
+            OpenEhrConstants.GET_VERSIONED_COMPOSITION_PATH,
+            OpenEhrConstants.GET_COMPOSITION_VERSION_PATH,
+            "/ehr/{ehr_id}/directory",
+            OpenEhrConstants.GET_FOLDER_PATH,
+            "/ehr/{ehr_id}/contribution",
+            "/ehr/{ehr_id}/contribution/{contribution_uid}",
+            "/query/aql",
+            "/query/{qualified_query_name}",
+            "/query/{qualified_query_name}/{version}",
+            "/definition/template/adl1.4",
+            "/definition/template/adl1.4/{template_id}",
+            "/definition/query",
+            "/definition/query/{qualified_query_name}",
+            "/definition/query/{qualified_query_name}/{version}");
+
+    private static final Splitter PATH_SPLITTER = Splitter.on('/').omitEmptyStrings();
+
+    private final String basePath;
+    private final List<List<String>> templates;
+
+    /**
+     * @param basePath  path prefix of the REST API (e.g. {@code /rest/openehr/v1}), it is removed before matching
+     * @param templates endpoint templates, relative to the base path
+     */
+    public EndpointTemplates(String basePath, @Nonnull List<String> templates) {
+        this.basePath = basePath == null || "/".equals(basePath) ? "" : stripTrailingSlash(basePath);
+        this.templates = templates.stream().map(PATH_SPLITTER::splitToList).collect(ImmutableList.toImmutableList());
+    }
+
+    public EndpointTemplates(String basePath) {
+        this(basePath, DEFAULT_TEMPLATES);
+    }
+
+    public String getTemplate(@Nonnull URI uri) {
+        String path = uri.getRawPath() == null ? "" : uri.getRawPath();
+        if (!basePath.isEmpty() && path.startsWith(basePath)) {
+            path = path.substring(basePath.length());
+        }
+        List<String> segments = PATH_SPLITTER.splitToList(path);
+
+        List<String> bestMatch = null;
+        int bestLiteralCount = -1;
+        for (List<String> template : templates) {
+            int literalCount = match(template, segments);
+            if (literalCount > bestLiteralCount) {
+                bestMatch = template;
+                bestLiteralCount = literalCount;
+            }
+        }
+        List<String> result = bestMatch == null
+                ? segments.stream().map(segment -> isIdentifier(segment) ? "{id}" : segment).collect(Collectors.toList())
+                : bestMatch;
+        return '/' + String.join("/", result);
+    }
+
+    private static int match(List<String> template, List<String> segments) {
+        if (template.size() != segments.size()) {
+            return -1;
+        }
+        int literalCount = 0;
+        for (int i = 0; i < template.size(); i++) {
+            String templateSegment = template.get(i);
+            if (!templateSegment.startsWith("{")) {
+                if (!templateSegment.equals(segments.get(i))) {
+                    return -1;
+                }
+                literalCount++;
+            }
+        }
+        return literalCount;
+    }
+
+    private static boolean isIdentifier(String segment) {
+        return segment.contains("::") || segment.length() >= 8 && segment.chars().anyMatch(Character::isDigit);
+    }
+
+    private static String stripTrailingSlash(String path) {
+        return path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+    }
+}
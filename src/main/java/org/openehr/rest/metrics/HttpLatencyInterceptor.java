@@ -0,0 +1,206 @@
+/*
+ * Copyright 2020-2021 Better Ltd (www.better.care)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.openehr.rest.metrics;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records latency (until the response headers are received), request and response bytes and status classes of every
+ * request, per method and endpoint template (see {@link EndpointTemplates}). Recording is lock-free, latencies are kept in
+ * HdrHistograms with microsecond resolution.
+ *
+ * @author Dusan Markovic
+ */
+public class HttpLatencyInterceptor implements ClientHttpRequestInterceptor {
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(10L);
+
+    private final EndpointTemplates endpointTemplates;
+    private final ConcurrentMap<String, EndpointStats> endpointStats = new ConcurrentHashMap<>();
+
+    public HttpLatencyInterceptor(@Nonnull EndpointTemplates endpointTemplates) {
+        this.endpointTemplates = endpointTemplates;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+        EndpointStats stats = endpointStats.computeIfAbsent(
+                request.getMethodValue() + ' ' + endpointTemplates.getTemplate(request.getURI()),
+                key -> new EndpointStats());
+        stats.requestBytes.add(body.length);
+        long start = System.nanoTime();
+        ClientHttpResponse response;
+        try {
+            response = execution.execute(request, body);
+        } catch (IOException | RuntimeException e) {
+            stats.ioErrors.increment();
+            throw e;
+        }
+        stats.latency.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start), HIGHEST_TRACKABLE_MICROS));
+        int statusClass = response.getRawStatusCode() / 100;
+        if (statusClass >= 1 && statusClass <= 5) {
+            stats.statusClasses[statusClass - 1].increment();
+        }
+        return new CountingClientHttpResponse(response, stats.responseBytes::add);
+    }
+
+    /**
+     * Returns summary per endpoint (sorted by key), the latency histograms keep accumulating.
+     *
+     * @return summary per endpoint
+     */
+    public Map<String, EndpointSummary> getSummary() {
+        Map<String, EndpointSummary> summary = new TreeMap<>();
+        endpointStats.forEach((key, stats) -> summary.put(key, stats.summarize()));
+        return summary;
+    }
+
+    public String toText() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-80s %8s %9s %9s %9s %9s %12s %12s %6s %6s %6s %6s%n",
+                                "endpoint", "count", "p50 ms", "p95 ms", "p99 ms", "max ms", "req bytes", "resp bytes",
+                                "2xx", "3xx", "4xx", "5xx+io"));
+        getSummary().forEach((key, summary) -> sb.append(String.format(
+                "%-80s %8d %9.2f %9.2f %9.2f %9.2f %12d %12d %6d %6d %6d %6d%n",
+                key, summary.getCount(), summary.getP50Millis(), summary.getP95Millis(), summary.getP99Millis(), summary.getMaxMillis(),
+                summary.getRequestBytes(), summary.getResponseBytes(),
+                summary.getStatusClasses().get("2xx"), summary.getStatusClasses().get("3xx"), summary.getStatusClasses().get("4xx"),
+                summary.getStatusClasses().get("5xx") + summary.getIoErrors())));
+        return sb.toString();
+    }
+
+    public String toJson() throws JsonProcessingException {
+        return new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValueAsString(getSummary());
+    }
+
+    public void reset() {
+        endpointStats.clear();
+    }
+
+    private static final class EndpointStats {
+        private final Recorder latency = new Recorder(HIGHEST_TRACKABLE_MICROS, 3);
+        private final LongAdder requestBytes = new LongAdder();
+        private final LongAdder responseBytes = new LongAdder();
+        private final LongAdder ioErrors = new LongAdder();
+        private final LongAdder[] statusClasses = {new LongAdder(), new LongAdder(), new LongAdder(), new LongAdder(), new LongAdder()};
+        private final Histogram accumulated = new Histogram(HIGHEST_TRACKABLE_MICROS, 3);
+        private Histogram interval;
+
+        private synchronized EndpointSummary summarize() {
+            interval = latency.getIntervalHistogram(interval);
+            accumulated.add(interval);
+            Map<String, Long> statusCounts = new LinkedHashMap<>();
+            for (int i = 0; i < statusClasses.length; i++) {
+                statusCounts.put((i + 1) + "xx", statusClasses[i].sum());
+            }
+            return new EndpointSummary(
+                    accumulated.getTotalCount(),
+                    accumulated.getValueAtPercentile(50.0d) / 1000.0d,
+                    accumulated.getValueAtPercentile(95.0d) / 1000.0d,
+                    accumulated.getValueAtPercentile(99.0d) / 1000.0d,
+                    accumulated.getMaxValue() / 1000.0d,
+                    requestBytes.sum(),
+                    responseBytes.sum(),
+                    statusCounts,
+                    ioErrors.sum());
+        }
+    }
+
+    public static final class EndpointSummary {
+        private final long count;
+        private final double p50Millis;
+        private final double p95Millis;
+        private final double p99Millis;
+        private final double maxMillis;
+        private final long requestBytes;
+        private final long responseBytes;
+        private final Map<String, Long> statusClasses;
+        private final long ioErrors;
+
+        private EndpointSummary(
+                long count,
+                double p50Millis,
+                double p95Millis,
+                double p99Millis,
+                double maxMillis,
+                long requestBytes,
+                long responseBytes,
+                Map<String, Long> statusClasses,
+                long ioErrors) {
+            this.count = count;
+            this.p50Millis = p50Millis;
+            this.p95Millis = p95Millis;
+            this.p99Millis = p99Millis;
+            this.maxMillis = maxMillis;
+            this.requestBytes = requestBytes;
+            this.responseBytes = responseBytes;
+            this.statusClasses = statusClasses;
+            this.ioErrors = ioErrors;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getP50Millis() {
+            return p50Millis;
+        }
+
+        public double getP95Millis() {
+            return p95Millis;
+        }
+
+        public double getP99Millis() {
+            return p99Millis;
+        }
+
+        public double getMaxMillis() {
+            return maxMillis;
+        }
+
+        public long getRequestBytes() {
+            return requestBytes;
+        }
+
+        public long getResponseBytes() {
+            return responseBytes;
+        }
+
+        public Map<String, Long> getStatusClasses() {
+            return statusClasses;
+        }
+
+        public long getIoErrors() {
+            return ioErrors;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2020-2021 Better Ltd (www.better.care)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.openehr.rest.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.apache.http.pool.ConnPoolControl;
+import org.apache.http.pool.PoolStats;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Micrometer instrumentation of the OpenEHR REST client:
+ * <ul>
+ * <li>{@value #REQUESTS}: time until the response headers are received (network and server time), per method, endpoint
+ * template ({@link EndpointTemplates}), status and outcome,</li>
+ * <li>{@value #RESPONSE_PROCESSING}: time from the response headers until the response is closed, i.e. reading and
+ * converting the body,</li>
+ * <li>{@value #REQUEST_SIZE} and {@value #RESPONSE_SIZE}: body sizes in bytes,</li>
+ * <li>{@value #POOL_LEASED}, {@value #POOL_AVAILABLE}, {@value #POOL_PENDING} and {@value #POOL_MAX}: connection pool
+ * gauges, see {@link #bindConnectionPool(ConnPoolControl)}.</li>
+ * </ul>
+ *
+ * @author Dusan Markovic
+ */
+public class OpenEhrClientMetrics {
+    public static final String REQUESTS = "openehr.client.requests";
+    public static final String RESPONSE_PROCESSING = "openehr.client.response.processing";
+    public static final String REQUEST_SIZE = "openehr.client.request.size";
+    public static final String RESPONSE_SIZE = "openehr.client.response.size";
+    public static final String POOL_LEASED = "openehr.client.pool.leased";
+    public static final String POOL_AVAILABLE = "openehr.client.pool.available";
+    public static final String POOL_PENDING = "openehr.client.pool.pending";
+    public static final String POOL_MAX = "openehr.client.pool.max";
+
+    private final MeterRegistry meterRegistry;
+    private final EndpointTemplates endpointTemplates;
+
+    public OpenEhrClientMetrics(@Nonnull MeterRegistry meterRegistry, @Nonnull EndpointTemplates endpointTemplates) {
+        this.meterRegistry = meterRegistry;
+        this.endpointTemplates = endpointTemplates;
+    }
+
+    public MeterRegistry getMeterRegistry() {
+        return meterRegistry;
+    }
+
+    public ClientHttpRequestInterceptor requestInterceptor() {
+        return (request, body, execution) -> {
+            Tags tags = Tags.of("method", request.getMethodValue(), "uri", endpointTemplates.getTemplate(request.getURI()));
+            summary(REQUEST_SIZE, tags).record(body.length);
+
+            long start = System.nanoTime();
+            ClientHttpResponse response;
+            try {
+                response = execution.execute(request, body);
+            } catch (IOException | RuntimeException e) {
+                timer(REQUESTS, tags.and("status", "IO_ERROR", "outcome", "UNKNOWN")).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                throw e;
+            }
+            long headersReceived = System.nanoTime();
+            int status = response.getRawStatusCode();
+            timer(REQUESTS, tags.and("status", String.valueOf(status), "outcome", getOutcome(status)))
+                    .record(headersReceived - start, TimeUnit.NANOSECONDS);
+            return new CountingClientHttpResponse(response, bytes -> {
+                timer(RESPONSE_PROCESSING, tags).record(System.nanoTime() - headersReceived, TimeUnit.NANOSECONDS);
+                summary(RESPONSE_SIZE, tags).record(bytes);
+            });
+        };
+    }
+
+    /**
+     * Registers gauges for the connection pool, e.g. {@code PoolingHttpClientConnectionManager}.
+     *
+     * @param connectionPool connection pool
+     */
+    public void bindConnectionPool(@Nonnull ConnPoolControl<?> connectionPool) {
+        gauge(POOL_LEASED, connectionPool, pool -> pool.getTotalStats().getLeased());
+        gauge(POOL_AVAILABLE, connectionPool, pool -> pool.getTotalStats().getAvailable());
+        gauge(POOL_PENDING, connectionPool, pool -> pool.getTotalStats().getPending());
+        gauge(POOL_MAX, connectionPool, pool -> pool.getTotalStats().getMax());
+    }
+
+    private void gauge(String name, ConnPoolControl<?> connectionPool, ToDoubleFunction<ConnPoolControl<?>> value) {
+        Gauge.builder(name, connectionPool, value).description("HTTP client connection pool").register(meterRegistry);
+    }
+
+    private Timer timer(String name, Tags tags) {
+        return Timer.builder(name).tags(tags).publishPercentileHistogram().register(meterRegistry);
+    }
+
+    private DistributionSummary summary(String name, Tags tags) {
+        return DistributionSummary.builder(name).tags(tags).baseUnit("bytes").publishPercentileHistogram().register(meterRegistry);
+    }
+
+    private static String getOutcome(int status) {
+        switch (status / 100) {
+            case 1:
+                return "INFORMATIONAL";
+            case 2:
+                return "SUCCESS";
+            case 3:
+                return "REDIRECTION";
+            case 4:
+                return "CLIENT_ERROR";
+            case 5:
+                return "SERVER_ERROR";
+            default:
+                return "UNKNOWN";
+        }
+    }
+}
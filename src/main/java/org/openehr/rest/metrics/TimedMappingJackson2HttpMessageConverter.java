@@ -0,0 +1,142 @@
+/*
+ * Copyright 2020-2021 Better Ltd (www.better.care)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.openehr.rest.metrics;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.io.CountingInputStream;
+import com.google.common.io.CountingOutputStream;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.util.StreamUtils;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MappingJackson2HttpMessageConverter} that records the time Jackson spends reading ({@value #READ}) and writing
+ * ({@value #WRITE}) each type, and the bytes processed ({@value #READ_SIZE}, {@value #WRITE_SIZE}). Responses are parsed
+ * as they arrive, so the read time includes waiting for the rest of the body. With {@code bufferResponses} the body is
+ * read into memory first and the read time is parsing only, at the cost of a copy of every response body.
+ *
+ * @author Dusan Markovic
+ */
+public class TimedMappingJackson2HttpMessageConverter extends MappingJackson2HttpMessageConverter {
+    public static final String READ = "openehr.client.json.read";
+    public static final String WRITE = "openehr.client.json.write";
+    public static final String READ_SIZE = "openehr.client.json.read.size";
+    public static final String WRITE_SIZE = "openehr.client.json.write.size";
+
+    private final MeterRegistry meterRegistry;
+    private final boolean bufferResponses;
+
+    public TimedMappingJackson2HttpMessageConverter(@Nonnull ObjectMapper objectMapper, @Nonnull MeterRegistry meterRegistry) {
+        this(objectMapper, meterRegistry, false);
+    }
+
+    /**
+     * @param bufferResponses if true, response bodies are read into memory before they are parsed, so that the read time
+     *                        excludes the network
+     */
+    public TimedMappingJackson2HttpMessageConverter(
+            @Nonnull ObjectMapper objectMapper, @Nonnull MeterRegistry meterRegistry, boolean bufferResponses) {
+        super(objectMapper);
+        this.meterRegistry = meterRegistry;
+        this.bufferResponses = bufferResponses;
+    }
+
+    @Override
+    public Object read(@Nonnull Type type, Class<?> contextClass, @Nonnull HttpInputMessage inputMessage)
+            throws IOException, HttpMessageNotReadableException {
+        CountingInputMessage countingMessage = new CountingInputMessage(inputMessage, bufferResponses);
+        long start = System.nanoTime();
+        Object value = super.read(type, contextClass, countingMessage);
+        record(READ, READ_SIZE, getTypeName(type), System.nanoTime() - start, countingMessage.body.getCount());
+        return value;
+    }
+
+    @Override
+    protected Object readInternal(@Nonnull Class<?> clazz, @Nonnull HttpInputMessage inputMessage)
+            throws IOException, HttpMessageNotReadableException {
+        CountingInputMessage countingMessage = new CountingInputMessage(inputMessage, bufferResponses);
+        long start = System.nanoTime();
+        Object value = super.readInternal(clazz, countingMessage);
+        record(READ, READ_SIZE, clazz.getSimpleName(), System.nanoTime() - start, countingMessage.body.getCount());
+        return value;
+    }
+
+    @Override
+    protected void writeInternal(@Nonnull Object object, Type type, @Nonnull HttpOutputMessage outputMessage)
+            throws IOException, HttpMessageNotWritableException {
+        CountingOutputStream body = new CountingOutputStream(outputMessage.getBody());
+        long start = System.nanoTime();
+        super.writeInternal(object, type, new HttpOutputMessage() {
+            @Override
+            public OutputStream getBody() {
+                return body;
+            }
+
+            @Override
+            public HttpHeaders getHeaders() {
+                return outputMessage.getHeaders();
+            }
+        });
+        record(WRITE, WRITE_SIZE, getTypeName(type == null ? object.getClass() : type), System.nanoTime() - start, body.getCount());
+    }
+
+    private void record(String timerName, String sizeName, String typeName, long nanos, long bytes) {
+        Timer.builder(timerName).tag("type", typeName).publishPercentileHistogram().register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        DistributionSummary.builder(sizeName).tag("type", typeName).baseUnit("bytes").register(meterRegistry).record(bytes);
+    }
+
+    private static String getTypeName(Type type) {
+        Class<?> rawClass = ResolvableType.forType(type).resolve();
+        return rawClass == null ? type.getTypeName() : rawClass.getSimpleName();
+    }
+
+    private static final class CountingInputMessage implements HttpInputMessage {
+        private final HttpHeaders headers;
+        private final CountingInputStream body;
+
+        private CountingInputMessage(HttpInputMessage inputMessage, boolean buffered) throws IOException {
+            headers = inputMessage.getHeaders();
+            body = new CountingInputStream(
+                    buffered ? new ByteArrayInputStream(StreamUtils.copyToByteArray(inputMessage.getBody())) : inputMessage.getBody());
+        }
+
+        @Override
+        public InputStream getBody() {
+            return body;
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+    }
+}
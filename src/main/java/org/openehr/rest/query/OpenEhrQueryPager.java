@@ -0,0 +1,248 @@
+/*
+ * Copyright 2020-2021 Better Ltd (www.better.care)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.openehr.rest.query;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.openehr.data.OpenEhrQueryRequest;
+import org.openehr.data.OpenEhrQueryResponse;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.Nonnull;
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import java.util.regex.Pattern;
+import java.util.stream.StreamSupport;
+
+/**
+ * Splits an AQL query into pages of {@code pageSize} rows (using offset and fetch) and fetches up to {@code parallelism}
+ * pages at once. Rows are returned in order; a new page is only requested when the consumer has taken one, so at most
+ * {@code parallelism} pages are held at any time.
+ * <p>
+ * Paging stops at the first empty page. A page that comes back short is completed with another request for its missing
+ * rows, so a server that caps fetch below {@code pageSize} costs requests but no rows. A page with more rows than
+ * requested means the server ignores offset and fetch and fails the stream; a server that ignores only offset cannot be
+ * detected and returns the first rows again for every page.
+ * <p>
+ * Pages are separate queries, so the query needs an {@code ORDER BY} that sorts the rows completely (e.g. ending with a
+ * unique path like the composition uid), otherwise the server may return rows of one page again or skip others. The
+ * query must not limit the rows itself ({@code LIMIT}, {@code OFFSET}, {@code TOP} or {@code FETCH}), use offset and
+ * fetch of the request instead.
+ *
+ * @author Dusan Markovic
+ */
+public class OpenEhrQueryPager implements Closeable {
+    private static final Pattern STRING_LITERAL_PATTERN = Pattern.compile("'(?:[^'\\\\]|\\\\.)*'|\"(?:[^\"\\\\]|\\\\.)*\"");
+    private static final Pattern ROW_LIMIT_PATTERN = Pattern.compile("(?<=\\s)(LIMIT|OFFSET|TOP|FETCH)(?=\\s)", Pattern.CASE_INSENSITIVE);
+
+    private final RestTemplate restTemplate;
+    private final String queryUrl;
+    private final int pageSize;
+    private final int parallelism;
+    private final ExecutorService executorService;
+    private final boolean ownsExecutorService;
+
+    /**
+     * @param restTemplate rest template
+     * @param queryUrl     url of the AQL endpoint, e.g. {@code <base>/query/aql}
+     * @param pageSize     number of rows per page
+     * @param parallelism  maximum number of pages fetched at once
+     */
+    public OpenEhrQueryPager(@Nonnull RestTemplate restTemplate, @Nonnull String queryUrl, int pageSize, int parallelism) {
+        this(restTemplate,
+             queryUrl,
+             pageSize,
+             parallelism,
+             Executors.newFixedThreadPool(parallelism, new ThreadFactoryBuilder().setNameFormat("aql-pager-%d").setDaemon(true).build()),
+             true);
+    }
+
+    public OpenEhrQueryPager(
+            @Nonnull RestTemplate restTemplate,
+            @Nonnull String queryUrl,
+            int pageSize,
+            int parallelism,
+            @Nonnull ExecutorService executorService) {
+        this(restTemplate, queryUrl, pageSize, parallelism, executorService, false);
+    }
+
+    private OpenEhrQueryPager(
+            RestTemplate restTemplate,
+            String queryUrl,
+            int pageSize,
+            int parallelism,
+            ExecutorService executorService,
+            boolean ownsExecutorService) {
+        Preconditions.checkArgument(pageSize > 0, "pageSize must be positive");
+        Preconditions.checkArgument(parallelism > 0, "parallelism must be positive");
+        this.restTemplate = restTemplate;
+        this.queryUrl = queryUrl;
+        this.pageSize = pageSize;
+        this.parallelism = parallelism;
+        this.executorService = executorService;
+        this.ownsExecutorService = ownsExecutorService;
+    }
+
+    /**
+     * Returns all rows of the query. Offset and fetch of the request, if set, limit the rows like they would for a single
+     * request. Closing the stream cancels the pages that are still being fetched.
+     *
+     * @param request query request, it is not modified
+     * @return row stream
+     * @throws IllegalArgumentException if the query limits the rows itself
+     */
+    public Stream<List<Object>> rows(@Nonnull OpenEhrQueryRequest request) {
+        Preconditions.checkArgument(
+                request.getQ() == null || !ROW_LIMIT_PATTERN.matcher(STRING_LITERAL_PATTERN.matcher(request.getQ()).replaceAll("''")).find(),
+                "Query must not limit the rows with LIMIT, OFFSET, TOP or FETCH, set offset and fetch of the request instead.");
+        PageIterator iterator = new PageIterator(request);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(iterator::cancel);
+    }
+
+    @Override
+    public void close() {
+        if (ownsExecutorService) {
+            executorService.shutdownNow();
+        }
+    }
+
+    private List<List<Object>> fetchPage(OpenEhrQueryRequest request, int offset, int fetch) {
+        OpenEhrQueryRequest pageRequest = new OpenEhrQueryRequest();
+        pageRequest.setQ(request.getQ());
+        pageRequest.setQueryParameters(request.getQueryParameters());
+        pageRequest.setOffset(offset);
+        pageRequest.setFetch(fetch);
+        OpenEhrQueryResponse response = restTemplate.postForObject(queryUrl, pageRequest, OpenEhrQueryResponse.class);
+        return response == null || response.getRows() == null ? Collections.emptyList() : response.getRows();
+    }
+
+    private class PageIterator implements Iterator<List<Object>> {
+        private final OpenEhrQueryRequest request;
+        private final Deque<Page> pages = new ArrayDeque<>(parallelism);
+        private final int endOffset;
+        private int nextOffset;
+        private boolean exhausted;
+        private Iterator<List<Object>> rows = Collections.emptyIterator();
+
+        PageIterator(OpenEhrQueryRequest request) {
+            this.request = request;
+            nextOffset = request.getOffset() == null ? 0 : request.getOffset();
+            endOffset = request.getFetch() == null ? Integer.MAX_VALUE : nextOffset + request.getFetch();
+            while (pages.size() < parallelism && requestNextPage()) {
+                // fill the window
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!rows.hasNext()) {
+                Page page = pages.pollFirst();
+                if (page == null) {
+                    return false;
+                }
+                List<List<Object>> pageRows;
+                try {
+                    pageRows = page.get();
+                } catch (RuntimeException e) {
+                    cancel();
+                    throw e;
+                }
+                if (pageRows.size() > page.fetch) {
+                    cancel();
+                    throw new IllegalStateException(
+                            "Got " + pageRows.size() + " rows for fetch " + page.fetch + ", the server does not support offset and fetch.");
+                }
+                if (pageRows.isEmpty()) {
+                    cancel();
+                } else if (pageRows.size() < page.fetch) {
+                    // capped by the server or the last rows, an empty page tells which
+                    pages.addFirst(submitPage(page.offset + pageRows.size(), page.fetch - pageRows.size()));
+                } else {
+                    requestNextPage();
+                }
+                rows = pageRows.iterator();
+            }
+            return true;
+        }
+
+        @Override
+        public List<Object> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return rows.next();
+        }
+
+        void cancel() {
+            exhausted = true;
+            pages.forEach(page -> page.future.cancel(true));
+            pages.clear();
+        }
+
+        private boolean requestNextPage() {
+            if (exhausted || nextOffset >= endOffset) {
+                return false;
+            }
+            int fetch = Math.min(pageSize, endOffset - nextOffset);
+            pages.addLast(submitPage(nextOffset, fetch));
+            nextOffset += fetch;
+            return true;
+        }
+
+        private Page submitPage(int offset, int fetch) {
+            return new Page(executorService.submit(() -> fetchPage(request, offset, fetch)), offset, fetch);
+        }
+    }
+
+    private static final class Page {
+        private final Future<List<List<Object>>> future;
+        private final int offset;
+        private final int fetch;
+
+        private Page(Future<List<List<Object>>> future, int offset, int fetch) {
+            this.future = future;
+            this.offset = offset;
+            this.fetch = fetch;
+        }
+
+        private List<List<Object>> get() {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting for query page.");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException)e.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+}
@@ -0,0 +1,443 @@
+/*
+ * Copyright 2020-2021 Better Ltd (www.better.care)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.openehr.rest.standin;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.openehr.utils.LocatableUid;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * In-memory data of {@link OpenEhrStandInServer}: EHRs with their status, compositions, directory and contributions,
+ * templates and stored queries. Every change creates a new version with the commit time, nothing is ever removed.
+ *
+ * @author Dusan Markovic
+ */
+public class InMemoryOpenEhrStore {
+    private final String systemId;
+    private final Map<String, Ehr> ehrs = new ConcurrentHashMap<>();
+    private final Map<String, Ehr> ehrsBySubject = new ConcurrentHashMap<>();
+    private final Map<String, Template> templates = new ConcurrentHashMap<>();
+    private final Map<String, StoredQuery> storedQueries = new ConcurrentHashMap<>();
+
+    public InMemoryOpenEhrStore() {
+        this("stand-in");
+    }
+
+    public InMemoryOpenEhrStore(@Nonnull String systemId) {
+        this.systemId = systemId;
+    }
+
+    public String getSystemId() {
+        return systemId;
+    }
+
+    /**
+     * Creates an EHR. The id and the subject are claimed atomically, so of concurrent requests for the same one only one
+     * succeeds.
+     *
+     * @param ehrId     EHR id, a random one if null
+     * @param ehrStatus initial EHR status
+     * @return new EHR or null if the id or the subject is taken
+     */
+    @Nullable
+    public Ehr createEhr(@Nullable String ehrId, @Nonnull JsonNode ehrStatus) {
+        Ehr ehr = new Ehr(ehrId == null ? UUID.randomUUID().toString() : ehrId);
+        String subjectKey = getSubjectKey(ehrStatus);
+        if (subjectKey != null && ehrsBySubject.putIfAbsent(subjectKey, ehr) != null) {
+            return null;
+        }
+        if (ehrs.putIfAbsent(ehr.getEhrId(), ehr) != null) {
+            if (subjectKey != null) {
+                ehrsBySubject.remove(subjectKey, ehr);
+            }
+            return null;
+        }
+        ehr.getEhrStatus().commit(ehrStatus, null);
+        return ehr;
+    }
+
+    @Nullable
+    public Ehr getEhr(@Nonnull String ehrId) {
+        return ehrs.get(ehrId);
+    }
+
+    public Collection<Ehr> getEhrs() {
+        return Collections.unmodifiableCollection(ehrs.values());
+    }
+
+    /**
+     * Returns the EHR whose current status has the subject, null if there is none.
+     */
+    @Nullable
+    public Ehr findEhr(@Nonnull String subjectId, @Nonnull String subjectNamespace) {
+        return ehrsBySubject.get(getSubjectKey(subjectId, subjectNamespace));
+    }
+
+    /**
+     * Adds a template.
+     *
+     * @return new template or null if one with the same id exists
+     */
+    @Nullable
+    public Template addTemplate(@Nonnull String templateId, @Nullable String concept, @Nullable String archetypeId, @Nonnull String content) {
+        Template template = new Template(templateId, concept, archetypeId, content, Instant.now());
+        return templates.putIfAbsent(templateId, template) == null ? template : null;
+    }
+
+    @Nullable
+    public Template getTemplate(@Nonnull String templateId) {
+        return templates.get(templateId);
+    }
+
+    public Collection<Template> getTemplates() {
+        return Collections.unmodifiableCollection(templates.values());
+    }
+
+    public StoredQuery putStoredQuery(@Nonnull String name, @Nonnull String version, @Nonnull String q) {
+        StoredQuery storedQuery = new StoredQuery(name, version, q, Instant.now());
+        storedQueries.put(name + '/' + version, storedQuery);
+        return storedQuery;
+    }
+
+    /**
+     * Returns the stored query, the highest version if {@code version} is null.
+     */
+    @Nullable
+    public StoredQuery getStoredQuery(@Nonnull String name, @Nullable String version) {
+        if (version != null) {
+            return storedQueries.get(name + '/' + version);
+        }
+        return storedQueries.values().stream()
+                .filter(query -> query.getName().equals(name))
+                .max((q1, q2) -> compareVersions(q1.getVersion(), q2.getVersion()))
+                .orElse(null);
+    }
+
+    public List<StoredQuery> getStoredQueries(@Nonnull String name) {
+        List<StoredQuery> queries = new ArrayList<>();
+        storedQueries.values().stream().filter(query -> query.getName().equals(name)).forEach(queries::add);
+        return queries;
+    }
+
+    public class Ehr {
+        private final String ehrId;
+        private final Instant timeCreated = Instant.now();
+        private final VersionedObject ehrStatus = new VersionedObject() {
+            @Override
+            public synchronized Version commit(@Nullable JsonNode data, @Nullable String precedingVersion) {
+                Version latest = getLatest();
+                Version version = super.commit(data, precedingVersion);
+                if (version != null) {
+                    updateSubject(latest == null ? null : getSubjectKey(latest.getData()), getSubjectKey(data));
+                }
+                return version;
+            }
+        };
+        private final Map<String, VersionedObject> compositions = new ConcurrentHashMap<>();
+        private final AtomicReference<VersionedObject> directory = new AtomicReference<>();
+        private final Map<String, JsonNode> contributions = new ConcurrentHashMap<>();
+
+        private Ehr(String ehrId) {
+            this.ehrId = ehrId;
+        }
+
+        public String getEhrId() {
+            return ehrId;
+        }
+
+        public Instant getTimeCreated() {
+            return timeCreated;
+        }
+
+        public VersionedObject getEhrStatus() {
+            return ehrStatus;
+        }
+
+        private void updateSubject(@Nullable String previousSubjectKey, @Nullable String subjectKey) {
+            if (Objects.equals(previousSubjectKey, subjectKey)) {
+                return;
+            }
+            if (previousSubjectKey != null) {
+                ehrsBySubject.remove(previousSubjectKey, this);
+            }
+            if (subjectKey != null) {
+                // a subject that belongs to another EHR stays with it
+                ehrsBySubject.putIfAbsent(subjectKey, this);
+            }
+        }
+
+        public VersionedObject createComposition() {
+            VersionedObject composition = new VersionedObject();
+            compositions.put(composition.getUid(), composition);
+            return composition;
+        }
+
+        /**
+         * Returns the versioned composition by its uid or the uid of one of its versions.
+         */
+        @Nullable
+        public VersionedObject getComposition(@Nonnull String uid) {
+            return compositions.get(toObjectId(uid));
+        }
+
+        public Collection<VersionedObject> getCompositions() {
+            return Collections.unmodifiableCollection(compositions.values());
+        }
+
+        /**
+         * Returns the directory, creates it if {@code create} is set and there is none yet.
+         */
+        @Nullable
+        public VersionedObject getDirectory(boolean create) {
+            if (create) {
+                directory.compareAndSet(null, new VersionedObject());
+            }
+            return directory.get();
+        }
+
+        public String addContribution(@Nonnull JsonNode contribution) {
+            String uid = UUID.randomUUID().toString();
+            contributions.put(uid, contribution);
+            return uid;
+        }
+
+        @Nullable
+        public JsonNode getContribution(@Nonnull String uid) {
+            return contributions.get(uid);
+        }
+    }
+
+    /**
+     * Versions of one object, data of a deleted version is null.
+     */
+    public class VersionedObject {
+        private final String uid = UUID.randomUUID().toString();
+        private final List<Version> versions = new ArrayList<>();
+
+        public String getUid() {
+            return uid;
+        }
+
+        @Nullable
+        public synchronized Version getLatest() {
+            return versions.isEmpty() ? null : versions.get(versions.size() - 1);
+        }
+
+        /**
+         * Returns the version with the version uid, or the latest one for the object uid.
+         */
+        @Nullable
+        public synchronized Version getVersion(@Nonnull String versionUid) {
+            if (!LocatableUid.isLocatable(versionUid)) {
+                return uid.equals(versionUid) ? getLatest() : null;
+            }
+            LocatableUid locatableUid = new LocatableUid(versionUid);
+            int index = locatableUid.getVersion() - 1;
+            return uid.equals(locatableUid.getUid()) && systemId.equals(locatableUid.getSystemId()) && index >= 0 && index < versions.size()
+                    ? versions.get(index)
+                    : null;
+        }
+
+        /**
+         * Returns the version that was current at {@code time}, null if the object did not exist yet.
+         */
+        @Nullable
+        public synchronized Version getVersionAtTime(@Nonnull Instant time) {
+            Version result = null;
+            for (Version version : versions) {
+                if (version.getTimeCommitted().isAfter(time)) {
+                    break;
+                }
+                result = version;
+            }
+            return result;
+        }
+
+        public synchronized List<Version> getVersions() {
+            return new ArrayList<>(versions);
+        }
+
+        /**
+         * Adds a version, null {@code data} marks the object as deleted.
+         *
+         * @param data             version data
+         * @param precedingVersion expected uid of the latest version, null for the first version
+         * @return new version or null if {@code precedingVersion} is not the latest version
+         */
+        @Nullable
+        public synchronized Version commit(@Nullable JsonNode data, @Nullable String precedingVersion) {
+            Version latest = getLatest();
+            if (!Objects.equals(precedingVersion, latest == null ? null : latest.getUid())) {
+                return null;
+            }
+            Instant now = Instant.now();
+            // keep commit times strictly increasing so that every version has its own point in time
+            Instant timeCommitted = latest != null && !now.isAfter(latest.getTimeCommitted()) ? latest.getTimeCommitted().plusMillis(1L) : now;
+            Version version = new Version(new LocatableUid(uid, systemId, versions.size() + 1).toString(), data, timeCommitted);
+            versions.add(version);
+            return version;
+        }
+    }
+
+    public static class Version {
+        private final String uid;
+        private final JsonNode data;
+        private final Instant timeCommitted;
+
+        Version(String uid, JsonNode data, Instant timeCommitted) {
+            this.uid = uid;
+            this.data = data;
+            this.timeCommitted = timeCommitted;
+        }
+
+        public String getUid() {
+            return uid;
+        }
+
+        @Nullable
+        public JsonNode getData() {
+            return data;
+        }
+
+        public boolean isDeleted() {
+            return data == null;
+        }
+
+        public Instant getTimeCommitted() {
+            return timeCommitted;
+        }
+    }
+
+    public static class Template {
+        private final String templateId;
+        private final String concept;
+        private final String archetypeId;
+        private final String content;
+        private final Instant createdTimestamp;
+
+        Template(String templateId, String concept, String archetypeId, String content, Instant createdTimestamp) {
+            this.templateId = templateId;
+            this.concept = concept;
+            this.archetypeId = archetypeId;
+            this.content = content;
+            this.createdTimestamp = createdTimestamp;
+        }
+
+        public String getTemplateId() {
+            return templateId;
+        }
+
+        public String getConcept() {
+            return concept;
+        }
+
+        /**
+         * Returns archetype id of the template root.
+         */
+        public String getArchetypeId() {
+            return archetypeId;
+        }
+
+        public String getContent() {
+            return content;
+        }
+
+        public Instant getCreatedTimestamp() {
+            return createdTimestamp;
+        }
+    }
+
+    public static class StoredQuery {
+        private final String name;
+        private final String version;
+        private final String q;
+        private final Instant saved;
+
+        StoredQuery(String name, String version, String q, Instant saved) {
+            this.name = name;
+            this.version = version;
+            this.q = q;
+            this.saved = saved;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        public String getQ() {
+            return q;
+        }
+
+        public Instant getSaved() {
+            return saved;
+        }
+    }
+
+    @Nullable
+    private static String getSubjectKey(@Nullable JsonNode ehrStatus) {
+        JsonNode externalRef = ehrStatus == null ? null : ehrStatus.path("subject").path("external_ref");
+        return externalRef == null || externalRef.isMissingNode()
+                ? null
+                : getSubjectKey(externalRef.path("id").path("value").asText(), externalRef.path("namespace").asText());
+    }
+
+    private static String getSubjectKey(String subjectId, String subjectNamespace) {
+        return subjectNamespace + "::" + subjectId;
+    }
+
+    /**
+     * Compares dotted versions by their numeric parts, e.g. {@code 1.10.0} is above {@code 1.9.0}. Parts that are not
+     * numbers are compared as text.
+     */
+    static int compareVersions(String version1, String version2) {
+        String[] parts1 = version1.split("\\.");
+        String[] parts2 = version2.split("\\.");
+        for (int i = 0; i < Math.max(parts1.length, parts2.length); i++) {
+            String part1 = i < parts1.length ? parts1[i] : "0";
+            String part2 = i < parts2.length ? parts2[i] : "0";
+            int result;
+            try {
+                result = Long.compare(Long.parseLong(part1), Long.parseLong(part2));
+            } catch (NumberFormatException e) {
+                result = part1.compareTo(part2);
+            }
+            if (result != 0) {
+                return result;
+            }
+        }
+        return 0;
+    }
+
+    private static String toObjectId(String uid) {
+        int index = uid.indexOf("::");
+        return index < 0 ? uid : uid.substring(0, index);
+    }
+}
@@ -0,0 +1,917 @@
+/*
+ * Copyright 2020-2021 Better Ltd (www.better.care)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.openehr.rest.standin;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.base.Preconditions;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.openehr.rest.standin.InMemoryOpenEhrStore.Ehr;
+import org.openehr.rest.standin.InMemoryOpenEhrStore.StoredQuery;
+import org.openehr.rest.standin.InMemoryOpenEhrStore.Template;
+import org.openehr.rest.standin.InMemoryOpenEhrStore.Version;
+import org.openehr.rest.standin.InMemoryOpenEhrStore.VersionedObject;
+import org.openehr.utils.ClientExecutors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.util.UriUtils;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.openehr.utils.OpenEhrConstants.OPEN_EHR_PATH;
+
+/**
+ * Embedded stand-in for an OpenEHR server, for benchmarking the client (and running the load tests) without a real
+ * server or network. It serves EHR, EHR status, composition, directory, contribution, AQL and stored query, and template
+ * endpoints from an {@link InMemoryOpenEhrStore} on the JDK HTTP server. Payloads are stored as sent, nothing is
+ * validated against templates, and AQL is not evaluated: a query returns the latest composition uids of the EHR in its
+ * {@code ehr_id/value='...'} condition (or of all EHRs), or {@link #queryRowCount(int) generated rows}.
+ * <p>
+ * Knobs: artificial {@link #latency(Duration) latency} with {@link #latencyJitter(Duration) jitter} per request, and
+ * {@link #responsePadding(int) padding} of JSON responses to make them bigger.
+ *
+ * @author Dusan Markovic
+ */
+public class OpenEhrStandInServer implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(OpenEhrStandInServer.class);
+    private static final Pattern TEMPLATE_ID_PATTERN = Pattern.compile("<template_id>\\s*<value>([^<]+)</value>");
+    private static final Pattern CONCEPT_PATTERN = Pattern.compile("<concept>([^<]*)</concept>");
+    private static final Pattern ROOT_ARCHETYPE_ID_PATTERN = Pattern.compile("<ontology\\b[^>]*\\barchetype_id=\"([^\"]+)\"");
+    private static final Pattern EHR_ID_PATTERN = Pattern.compile("ehr_id/value\\s*=\\s*'([^']+)'");
+    private static final String DEFAULT_QUERY_VERSION = "1.0.0";
+    private static final JsonNodeFactory NODES = JsonNodeFactory.instance;
+
+    private final InMemoryOpenEhrStore store;
+    private final ObjectMapper objectMapper;
+    private String basePath = OPEN_EHR_PATH;
+    private int port;
+    private int threads = 16;
+    private boolean virtualThreads;
+    private long latencyNanos;
+    private long latencyJitterNanos;
+    private int queryRowCount;
+    private int responsePadding;
+
+    private HttpServer server;
+    private ExecutorService executorService;
+
+    public OpenEhrStandInServer() {
+        this(new InMemoryOpenEhrStore(), new ObjectMapper());
+    }
+
+    public OpenEhrStandInServer(@Nonnull InMemoryOpenEhrStore store, @Nonnull ObjectMapper objectMapper) {
+        this.store = store;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Sets the path the endpoints are served under, {@value org.openehr.utils.OpenEhrConstants#OPEN_EHR_PATH} by default.
+     */
+    public OpenEhrStandInServer basePath(@Nonnull String basePath) {
+        this.basePath = basePath.endsWith("/") ? basePath.substring(0, basePath.length() - 1) : basePath;
+        return this;
+    }
+
+    /**
+     * Sets the port to listen on, 0 (the default) picks a free one.
+     */
+    public OpenEhrStandInServer port(int port) {
+        this.port = port;
+        return this;
+    }
+
+    /**
+     * Sets the number of request threads, used unless requests run on virtual threads.
+     */
+    public OpenEhrStandInServer threads(int threads) {
+        Preconditions.checkArgument(threads > 0, "threads must be positive");
+        this.threads = threads;
+        return this;
+    }
+
+    public OpenEhrStandInServer virtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+        return this;
+    }
+
+    /**
+     * Sets the time every request waits before it is handled.
+     */
+    public OpenEhrStandInServer latency(@Nonnull Duration latency) {
+        latencyNanos = latency.toNanos();
+        return this;
+    }
+
+    /**
+     * Sets the maximum random time added to {@link #latency(Duration)}.
+     */
+    public OpenEhrStandInServer latencyJitter(@Nonnull Duration latencyJitter) {
+        latencyJitterNanos = latencyJitter.toNanos();
+        return this;
+    }
+
+    /**
+     * Makes AQL queries return this many generated rows (before offset and fetch) instead of composition uids from the
+     * store, 0 turns generated rows off.
+     */
+    public OpenEhrStandInServer queryRowCount(int queryRowCount) {
+        this.queryRowCount = queryRowCount;
+        return this;
+    }
+
+    /**
+     * Appends this many bytes of whitespace to every JSON response.
+     */
+    public OpenEhrStandInServer responsePadding(int responsePadding) {
+        this.responsePadding = responsePadding;
+        return this;
+    }
+
+    public InMemoryOpenEhrStore getStore() {
+        return store;
+    }
+
+    public synchronized OpenEhrStandInServer start() throws IOException {
+        Preconditions.checkState(server == null, "Server is already started.");
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        executorService = ClientExecutors.newClientExecutor(virtualThreads, threads, "openehr-stand-in");
+        server.setExecutor(executorService);
+        server.createContext(basePath.isEmpty() ? "/" : basePath, this::handle);
+        server.start();
+        LOG.info("OpenEHR stand-in server started at {}.", getUri());
+        return this;
+    }
+
+    /**
+     * Returns the base uri, e.g. {@code http://127.0.0.1:12345/rest/openehr/v1}.
+     *
+     * @return base uri
+     */
+    public URI getUri() {
+        Preconditions.checkState(server != null, "Server is not started.");
+        InetSocketAddress address = server.getAddress();
+        return URI.create("http://" + address.getAddress().getHostAddress() + ':' + address.getPort() + basePath);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (server != null) {
+            server.stop(0);
+            executorService.shutdownNow();
+            server = null;
+        }
+    }
+
+    private void handle(HttpExchange exchange) {
+        try {
+            delay();
+            route(new Request(exchange));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (JsonProcessingException | IllegalArgumentException | DateTimeParseException e) {
+            sendError(exchange, HttpStatus.BAD_REQUEST, e.getMessage());
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Stand-in request {} {} failed.", exchange.getRequestMethod(), exchange.getRequestURI(), e);
+            sendError(exchange, HttpStatus.INTERNAL_SERVER_ERROR, e.toString());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void delay() throws InterruptedException {
+        long nanos = latencyNanos + (latencyJitterNanos > 0L ? ThreadLocalRandom.current().nextLong(latencyJitterNanos + 1L) : 0L);
+        if (nanos > 0L) {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        }
+    }
+
+    private void route(Request request) throws IOException {
+        List<String> path = request.path;
+        String root = path.isEmpty() ? "" : path.get(0);
+        if ("ehr".equals(root)) {
+            routeEhr(request);
+        } else if ("query".equals(root) && path.size() >= 2) {
+            routeQuery(request);
+        } else if ("definition".equals(root) && path.size() >= 3 && "template".equals(path.get(1)) && "adl1.4".equals(path.get(2))) {
+            routeTemplate(request);
+        } else if ("definition".equals(root) && path.size() >= 3 && "query".equals(path.get(1))) {
+            routeStoredQuery(request);
+        } else {
+            request.sendError(HttpStatus.NOT_FOUND, "No stand-in endpoint for " + request.exchange.getRequestURI().getPath());
+        }
+    }
+
+    private void routeEhr(Request request) throws IOException {
+        List<String> path = request.path;
+        if (path.size() == 1) {
+            if (request.is("POST")) {
+                createEhr(request, null);
+            } else if (request.is("GET") && request.params.containsKey("subject_id")) {
+                Ehr ehr = store.findEhr(request.params.get("subject_id"), request.params.getOrDefault("subject_namespace", ""));
+                if (ehr == null) {
+                    request.sendError(HttpStatus.NOT_FOUND, "EHR with this subject not found.");
+                } else {
+                    request.sendJson(HttpStatus.OK, toEhrJson(ehr), ehrHeaders(ehr));
+                }
+            } else {
+                request.sendError(HttpStatus.METHOD_NOT_ALLOWED, null);
+            }
+            return;
+        }
+        if (path.size() == 2 && request.is("PUT")) {
+            createEhr(request, path.get(1));
+            return;
+        }
+        Ehr ehr = store.getEhr(path.get(1));
+        if (ehr == null) {
+            request.sendError(HttpStatus.NOT_FOUND, "EHR with id " + path.get(1) + " not found.");
+            return;
+        }
+        if (path.size() == 2) {
+            if (request.is("GET")) {
+                request.sendJson(HttpStatus.OK, toEhrJson(ehr), ehrHeaders(ehr));
+            } else {
+                request.sendError(HttpStatus.METHOD_NOT_ALLOWED, null);
+            }
+            return;
+        }
+        String resource = path.get(2);
+        String locationPrefix = "/ehr/" + ehr.getEhrId() + '/';
+        switch (resource) {
+            case "ehr_status":
+            case "versioned_ehr_status":
+                routeVersionedObject(request, ehr.getEhrStatus(), locationPrefix + "ehr_status/", false);
+                break;
+            case "composition":
+                routeComposition(request, ehr, locationPrefix + "composition/");
+                break;
+            case "versioned_composition":
+                VersionedObject composition = path.size() >= 4 ? ehr.getComposition(path.get(3)) : null;
+                if (composition == null) {
+                    request.sendError(HttpStatus.NOT_FOUND, "Versioned composition not found.");
+                } else {
+                    routeVersionedObjectVersions(request, ehr, composition);
+                }
+                break;
+            case "directory":
+                VersionedObject directory = ehr.getDirectory(request.is("POST"));
+                if (directory == null) {
+                    request.sendError(HttpStatus.NOT_FOUND, "Directory not found.");
+                } else {
+                    routeVersionedObject(request, directory, locationPrefix + "directory/", true);
+                }
+                break;
+            case "contribution":
+                routeContribution(request, ehr, locationPrefix + "contribution/");
+                break;
+            default:
+                request.sendError(HttpStatus.NOT_FOUND, "No stand-in endpoint for " + resource + '.');
+        }
+    }
+
+    private void createEhr(Request request, String ehrId) throws IOException {
+        JsonNode ehrStatus = request.hasBody() ? request.readJson() : createDefaultEhrStatus();
+        Ehr ehr = store.createEhr(ehrId, ehrStatus);
+        if (ehr == null) {
+            JsonNode externalRef = ehrStatus.path("subject").path("external_ref");
+            boolean subjectTaken = !externalRef.isMissingNode()
+                    && store.findEhr(externalRef.path("id").path("value").asText(), externalRef.path("namespace").asText()) != null;
+            request.sendError(HttpStatus.CONFLICT, subjectTaken ? "EHR with this subject already exists." : "EHR with id " + ehrId + " already exists.");
+            return;
+        }
+        request.sendRepresentation(HttpStatus.CREATED, toEhrJson(ehr), ehrHeaders(ehr));
+    }
+
+    private HttpHeaders ehrHeaders(Ehr ehr) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setLocation(location("/ehr/" + ehr.getEhrId()));
+        headers.setETag('"' + ehr.getEhrId() + '"');
+        headers.setLastModified(ehr.getTimeCreated().toEpochMilli());
+        return headers;
+    }
+
+    private ObjectNode toEhrJson(Ehr ehr) {
+        ObjectNode json = NODES.objectNode();
+        json.set("system_id", value(store.getSystemId()));
+        json.set("ehr_id", value(ehr.getEhrId()));
+        Version status = ehr.getEhrStatus().getLatest();
+        if (status != null) {
+            ObjectNode statusRef = json.putObject("ehr_status");
+            statusRef.set("id", objectVersionId(status.getUid()));
+            statusRef.put("namespace", "local");
+            statusRef.put("type", "EHR_STATUS");
+        }
+        json.set("time_created", value(format(ehr.getTimeCreated())));
+        return json;
+    }
+
+    private static ObjectNode createDefaultEhrStatus() {
+        ObjectNode ehrStatus = NODES.objectNode();
+        ehrStatus.put("_type", "EHR_STATUS");
+        ehrStatus.put("archetype_node_id", "openEHR-EHR-EHR_STATUS.generic.v1");
+        ehrStatus.set("name", value("EHR Status"));
+        ehrStatus.putObject("subject").put("_type", "PARTY_SELF");
+        ehrStatus.put("is_queryable", true);
+        ehrStatus.put("is_modifiable", true);
+        return ehrStatus;
+    }
+
+    private void routeComposition(Request request, Ehr ehr, String locationPrefix) throws IOException {
+        if (request.path.size() == 3) {
+            if (request.is("POST")) {
+                VersionedObject composition = ehr.createComposition();
+                Version version = composition.commit(request.readJson(), null);
+                request.sendVersion(HttpStatus.CREATED, locationPrefix, version);
+            } else {
+                request.sendError(HttpStatus.METHOD_NOT_ALLOWED, null);
+            }
+            return;
+        }
+        String uid = request.path.get(3);
+        VersionedObject composition = ehr.getComposition(uid);
+        if (composition == null) {
+            request.sendError(HttpStatus.NOT_FOUND, "Composition with uid " + uid + " not found.");
+            return;
+        }
+        switch (request.exchange.getRequestMethod()) {
+            case "GET":
+                sendVersion(
+                        request,
+                        !isVersionUid(uid) && request.params.containsKey("version_at_time")
+                                ? composition.getVersionAtTime(parseTime(request.params.get("version_at_time")))
+                                : composition.getVersion(uid),
+                        locationPrefix);
+                break;
+            case "PUT":
+                commit(request, composition, request.readJson(), request.headers.getFirst(HttpHeaders.IF_MATCH), locationPrefix);
+                break;
+            case "DELETE":
+                Version latest = composition.getLatest();
+                if (latest == null || latest.isDeleted()) {
+                    request.sendError(HttpStatus.CONFLICT, "Composition is already deleted.");
+                } else if (!isVersionUid(uid) || !uid.equals(latest.getUid())) {
+                    request.sendError(HttpStatus.CONFLICT, "Only the latest version can be deleted.");
+                } else {
+                    commit(request, composition, null, uid, locationPrefix);
+                }
+                break;
+            default:
+                request.sendError(HttpStatus.METHOD_NOT_ALLOWED, null);
+        }
+    }
+
+    /**
+     * EHR status and directory: one versioned object per EHR, the path may end with a version uid.
+     */
+    private void routeVersionedObject(Request request, VersionedObject versionedObject, String locationPrefix, boolean deletable)
+            throws IOException {
+        List<String> path = request.path;
+        switch (request.exchange.getRequestMethod()) {
+            case "GET":
+                Version version;
+                if (path.size() >= 4) {
+                    version = versionedObject.getVersion(path.get(path.size() - 1));
+                } else if (request.params.containsKey("version_at_time")) {
+                    version = versionedObject.getVersionAtTime(parseTime(request.params.get("version_at_time")));
+                } else {
+                    version = versionedObject.getLatest();
+                }
+                sendVersion(request, version, locationPrefix);
+                break;
+            case "POST":
+                if (versionedObject.getLatest() != null) {
+                    request.sendError(HttpStatus.CONFLICT, "Already exists.");
+                } else {
+                    request.sendVersion(HttpStatus.CREATED, locationPrefix, versionedObject.commit(request.readJson(), null));
+                }
+                break;
+            case "PUT":
+                commit(request, versionedObject, request.readJson(), request.headers.getFirst(HttpHeaders.IF_MATCH), locationPrefix);
+                break;
+            case "DELETE":
+                if (deletable) {
+                    commit(request, versionedObject, null, request.headers.getFirst(HttpHeaders.IF_MATCH), locationPrefix);
+                    break;
+                }
+                // fall through
+            default:
+                request.sendError(HttpStatus.METHOD_NOT_ALLOWED, null);
+        }
+    }
+
+    /**
+     * {@code versioned_composition/{versioned_object_uid}[/version[/{version_uid}]]}
+     */
+    private void routeVersionedObjectVersions(Request request, Ehr ehr, VersionedObject versionedObject) throws IOException {
+        List<String> path = request.path;
+        if (!request.is("GET")) {
+            request.sendError(HttpStatus.METHOD_NOT_ALLOWED, null);
+            return;
+        }
+        if (path.size() == 4) {
+            List<Version> versions = versionedObject.getVersions();
+            ObjectNode json = NODES.objectNode();
+            json.set("uid", value(versionedObject.getUid()));
+            json.putObject("owner_id").set("id", value(ehr.getEhrId()));
+            json.set("time_created", value(format(versions.get(0).getTimeCommitted())));
+            request.sendJson(HttpStatus.OK, json, new HttpHeaders());
+            return;
+        }
+        Version version;
+        if (path.size() >= 6) {
+            version = versionedObject.getVersion(path.get(5));
+        } else if (request.params.containsKey("version_at_time")) {
+            version = versionedObject.getVersionAtTime(parseTime(request.params.get("version_at_time")));
+        } else {
+            version = versionedObject.getLatest();
+        }
+        if (version == null) {
+            request.sendError(HttpStatus.NOT_FOUND, "Version not found.");
+            return;
+        }
+        ObjectNode json = NODES.objectNode();
+        json.put("_type", "ORIGINAL_VERSION");
+        json.set("uid", objectVersionId(version.getUid()));
+        int index = versionedObject.getVersions().indexOf(version);
+        if (index > 0) {
+            json.set("preceding_version_uid", objectVersionId(versionedObject.getVersions().get(index - 1).getUid()));
+        }
+        json.set("data", version.isDeleted() ? null : withUid(version.getData(), version.getUid()));
+        ObjectNode commitAudit = json.putObject("commit_audit");
+        commitAudit.set("time_committed", value(format(version.getTimeCommitted())));
+        commitAudit.putObject("change_type").put("value", version.isDeleted() ? "deleted" : index == 0 ? "creation" : "modification");
+        json.putObject("lifecycle_state").put("value", version.isDeleted() ? "deleted" : "complete");
+        request.sendJson(HttpStatus.OK, json, versionHeaders(null, version));
+    }
+
+    private void sendVersion(Request request, @Nullable Version version, String locationPrefix) throws IOException {
+        if (version == null) {
+            request.sendError(HttpStatus.NOT_FOUND, "Version not found.");
+        } else if (version.isDeleted()) {
+            request.sendEmpty(HttpStatus.NO_CONTENT, versionHeaders(null, version));
+        } else {
+            request.sendJson(HttpStatus.OK, withUid(version.getData(), version.getUid()), versionHeaders(locationPrefix, version));
+        }
+    }
+
+    private void commit(Request request, VersionedObject versionedObject, JsonNode data, String ifMatch, String locationPrefix)
+            throws IOException {
+        Version latest = versionedObject.getLatest();
+        if (latest == null) {
+            request.sendError(HttpStatus.NOT_FOUND, "Not found.");
+            return;
+        }
+        if (ifMatch == null) {
+            request.sendError(HttpStatus.BAD_REQUEST, "If-Match header is required.");
+            return;
+        }
+        Version version = versionedObject.commit(data, ifMatch.replace("\"", ""));
+        if (version == null) {
+            HttpHeaders headers = versionHeaders(locationPrefix, latest);
+            request.sendJson(HttpStatus.PRECONDITION_FAILED, error("If-Match does not match the latest version " + latest.getUid() + '.'), headers);
+        } else if (data == null) {
+            request.sendEmpty(HttpStatus.NO_CONTENT, versionHeaders(null, version));
+        } else {
+            request.sendVersion(HttpStatus.OK, locationPrefix, version);
+        }
+    }
+
+    private HttpHeaders versionHeaders(@Nullable String locationPrefix, Version version) {
+        HttpHeaders headers = new HttpHeaders();
+        if (locationPrefix != null) {
+            headers.setLocation(location(locationPrefix + version.getUid()));
+        }
+        headers.setETag('"' + version.getUid() + '"');
+        headers.setLastModified(version.getTimeCommitted().toEpochMilli());
+        return headers;
+    }
+
+    private void routeContribution(Request request, Ehr ehr, String locationPrefix) throws IOException {
+        if (request.path.size() == 3 && request.is("POST")) {
+            JsonNode contribution = request.readJson();
+            ArrayNode versionRefs = NODES.arrayNode();
+            for (JsonNode versionJson : contribution.path("versions")) {
+                Version version = commitContributionVersion(ehr, versionJson);
+                if (version == null) {
+                    request.sendError(HttpStatus.CONFLICT, "Preceding version uid does not match the latest version.");
+                    return;
+                }
+                versionRefs.addObject().set("id", objectVersionId(version.getUid()));
+            }
+            ObjectNode stored = NODES.objectNode();
+            stored.set("versions", versionRefs);
+            stored.set("audit", contribution.path("audit"));
+            String uid = ehr.addContribution(stored);
+            stored.set("uid", value(uid));
+            HttpHeaders headers = new HttpHeaders();
+            headers.setLocation(location(locationPrefix + uid));
+            headers.setETag('"' + uid + '"');
+            headers.setLastModified(System.currentTimeMillis());
+            request.sendRepresentation(HttpStatus.CREATED, stored, headers);
+        } else if (request.path.size() == 4 && request.is("GET")) {
+            JsonNode contribution = ehr.getContribution(request.path.get(3));
+            if (contribution == null) {
+                request.sendError(HttpStatus.NOT_FOUND, "Contribution not found.");
+            } else {
+                request.sendJson(HttpStatus.OK, contribution, new HttpHeaders());
+            }
+        } else {
+            request.sendError(HttpStatus.METHOD_NOT_ALLOWED, null);
+        }
+    }
+
+    private static Version commitContributionVersion(Ehr ehr, JsonNode versionJson) {
+        JsonNode data = versionJson.get("data");
+        String changeType = versionJson.path("commit_audit").path("change_type").path("value").asText();
+        boolean deleted = "deleted".equals(changeType) || data == null || data.isNull();
+        String precedingVersionUid = versionJson.path("preceding_version_uid").path("value").asText(null);
+        if (precedingVersionUid == null) {
+            return ehr.createComposition().commit(deleted ? null : data, null);
+        }
+        VersionedObject composition = ehr.getComposition(precedingVersionUid);
+        return composition == null ? null : composition.commit(deleted ? null : data, precedingVersionUid);
+    }
+
+    private void routeQuery(Request request) throws IOException {
+        String q;
+        String name = null;
+        Map<String, String> queryParameters = new HashMap<>();
+        Integer offset;
+        Integer fetch;
+        if (request.is("POST")) {
+            JsonNode body = request.readJson();
+            q = body.path("q").asText(null);
+            offset = body.hasNonNull("offset") ? body.get("offset").asInt() : null;
+            fetch = body.hasNonNull("fetch") ? body.get("fetch").asInt() : null;
+            body.path("query_parameters").fields().forEachRemaining(field -> queryParameters.put(field.getKey(), field.getValue().asText()));
+        } else if (request.is("GET")) {
+            q = request.params.get("q");
+            offset = request.params.containsKey("offset") ? Integer.valueOf(request.params.get("offset")) : null;
+            fetch = request.params.containsKey("fetch") ? Integer.valueOf(request.params.get("fetch")) : null;
+            request.params.forEach((key, value) -> {
+                if (!Arrays.asList("q", "offset", "fetch").contains(key)) {
+                    queryParameters.put(key, value);
+                }
+            });
+        } else {
+            request.sendError(HttpStatus.METHOD_NOT_ALLOWED, null);
+            return;
+        }
+        if (!"aql".equals(request.path.get(1))) {
+            name = request.path.get(1);
+            StoredQuery storedQuery = store.getStoredQuery(name, request.path.size() >= 3 ? request.path.get(2) : null);
+            if (storedQuery == null) {
+                request.sendError(HttpStatus.NOT_FOUND, "Stored query " + name + " not found.");
+                return;
+            }
+            q = storedQuery.getQ();
+        }
+        if (q == null) {
+            request.sendError(HttpStatus.BAD_REQUEST, "Query is missing.");
+            return;
+        }
+        request.sendJson(HttpStatus.OK, executeQuery(name, q, queryParameters, offset, fetch), new HttpHeaders());
+    }
+
+    private ObjectNode executeQuery(String name, String q, Map<String, String> queryParameters, Integer offset, Integer fetch) {
+        ObjectNode json = NODES.objectNode();
+        ObjectNode meta = json.putObject("meta");
+        meta.put("_type", "RESULTSET");
+        meta.put("_schema_version", "1.0.0");
+        meta.put("_created", format(Instant.now()));
+        meta.put("_generator", "openEHR stand-in");
+        meta.put("_executed_aql", q);
+        if (name != null) {
+            json.put("name", name);
+        }
+        json.put("q", q);
+        ArrayNode columns = json.putArray("columns");
+        ArrayNode rows = json.putArray("rows");
+        int from = offset == null ? 0 : offset;
+        int limit = fetch == null ? Integer.MAX_VALUE : fetch;
+        if (queryRowCount > 0) {
+            columns.addObject().put("name", "#0").put("path", "c/uid/value");
+            columns.addObject().put("name", "#1").put("path", "c/name/value");
+            columns.addObject().put("name", "#2").put("path", "c/context/start_time/value");
+            Instant start = Instant.EPOCH;
+            for (int i = from; i < queryRowCount && i - from < limit; i++) {
+                rows.addArray()
+                        .add(new UUID(0L, i) + "::" + store.getSystemId() + "::1")
+                        .add("Row " + i)
+                        .add(format(start.plusSeconds(i)));
+            }
+        } else {
+            columns.addObject().put("name", "#0").put("path", "c/uid/value");
+            Matcher matcher = EHR_ID_PATTERN.matcher(q);
+            String ehrId = matcher.find() ? matcher.group(1) : queryParameters.get("ehr_id");
+            List<Ehr> ehrs = ehrId == null
+                    ? new ArrayList<>(store.getEhrs())
+                    : store.getEhr(ehrId) == null ? Collections.emptyList() : Collections.singletonList(store.getEhr(ehrId));
+            List<String> uids = ehrs.stream()
+                    .flatMap(ehr -> ehr.getCompositions().stream())
+                    .map(VersionedObject::getLatest)
+                    .filter(version -> version != null && !version.isDeleted())
+                    .map(Version::getUid)
+                    .sorted()
+                    .skip(from)
+                    .limit(limit)
+                    .collect(Collectors.toList());
+            uids.forEach(uid -> rows.addArray().add(uid));
+        }
+        return json;
+    }
+
+    private void routeTemplate(Request request) throws IOException {
+        List<String> path = request.path;
+        if (path.size() == 3 && request.is("POST")) {
+            String content = new String(request.body, StandardCharsets.UTF_8);
+            Matcher matcher = TEMPLATE_ID_PATTERN.matcher(content);
+            if (!matcher.find()) {
+                request.sendError(HttpStatus.BAD_REQUEST, "Template has no template_id.");
+                return;
+            }
+            String templateId = matcher.group(1).trim();
+            Template template = store.addTemplate(templateId, find(CONCEPT_PATTERN, content), find(ROOT_ARCHETYPE_ID_PATTERN, content), content);
+            if (template == null) {
+                request.sendError(HttpStatus.CONFLICT, "Template " + templateId + " already exists.");
+                return;
+            }
+            HttpHeaders headers = templateHeaders(template);
+            if (request.prefersRepresentation()) {
+                request.send(HttpStatus.CREATED, MediaType.APPLICATION_XML, content.getBytes(StandardCharsets.UTF_8), headers);
+            } else {
+                request.sendEmpty(HttpStatus.CREATED, headers);
+            }
+        } else if (path.size() == 3 && request.is("GET")) {
+            ArrayNode json = NODES.arrayNode();
+            store.getTemplates().stream()
+                    .sorted((t1, t2) -> t1.getTemplateId().compareTo(t2.getTemplateId()))
+                    .forEach(template -> json.addObject()
+                            .put("template_id", template.getTemplateId())
+                            .put("concept", template.getConcept())
+                            .put("archetype_id", template.getArchetypeId())
+                            .put("created_timestamp", format(template.getCreatedTimestamp())));
+            request.sendJson(HttpStatus.OK, json, new HttpHeaders());
+        } else if (path.size() == 4 && request.is("GET")) {
+            Template template = store.getTemplate(path.get(3));
+            if (template == null) {
+                request.sendError(HttpStatus.NOT_FOUND, "Template " + path.get(3) + " not found.");
+                return;
+            }
+            HttpHeaders headers = templateHeaders(template);
+            if (headers.getETag().equals(request.headers.getFirst(HttpHeaders.IF_NONE_MATCH))) {
+                request.sendEmpty(HttpStatus.NOT_MODIFIED, headers);
+            } else {
+                request.send(HttpStatus.OK, MediaType.APPLICATION_XML, template.getContent().getBytes(StandardCharsets.UTF_8), headers);
+            }
+        } else {
+            request.sendError(HttpStatus.METHOD_NOT_ALLOWED, null);
+        }
+    }
+
+    private HttpHeaders templateHeaders(Template template) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setLocation(location("/definition/template/adl1.4/" + UriUtils.encodePathSegment(template.getTemplateId(), StandardCharsets.UTF_8)));
+        headers.setETag("\"" + Integer.toHexString(template.getContent().hashCode()) + '"');
+        headers.setLastModified(template.getCreatedTimestamp().toEpochMilli());
+        return headers;
+    }
+
+    private void routeStoredQuery(Request request) throws IOException {
+        List<String> path = request.path;
+        if (path.size() < 3) {
+            request.sendError(HttpStatus.NOT_FOUND, "Query name is missing.");
+            return;
+        }
+        String name = path.get(2);
+        String version = path.size() >= 4 ? path.get(3) : null;
+        if (request.is("PUT")) {
+            MediaType contentType = request.headers.getContentType();
+            String q = contentType != null && MediaType.APPLICATION_JSON.isCompatibleWith(contentType)
+                    ? request.readJson().path("q").asText(null)
+                    : new String(request.body, StandardCharsets.UTF_8);
+            if (q == null || q.isEmpty()) {
+                request.sendError(HttpStatus.BAD_REQUEST, "Query is missing.");
+                return;
+            }
+            StoredQuery storedQuery = store.putStoredQuery(name, version == null ? DEFAULT_QUERY_VERSION : version, q);
+            HttpHeaders headers = new HttpHeaders();
+            headers.setLocation(location("/definition/query/" + name + '/' + storedQuery.getVersion()));
+            request.sendRepresentation(HttpStatus.OK, toStoredQueryJson(storedQuery), headers);
+        } else if (request.is("GET") && version != null) {
+            StoredQuery storedQuery = store.getStoredQuery(name, version);
+            if (storedQuery == null) {
+                request.sendError(HttpStatus.NOT_FOUND, "Stored query " + name + '/' + version + " not found.");
+            } else {
+                request.sendJson(HttpStatus.OK, toStoredQueryJson(storedQuery), new HttpHeaders());
+            }
+        } else if (request.is("GET")) {
+            ArrayNode json = NODES.arrayNode();
+            store.getStoredQueries(name).forEach(storedQuery -> json.add(toStoredQueryJson(storedQuery)));
+            request.sendJson(HttpStatus.OK, json, new HttpHeaders());
+        } else {
+            request.sendError(HttpStatus.METHOD_NOT_ALLOWED, null);
+        }
+    }
+
+    private static ObjectNode toStoredQueryJson(StoredQuery storedQuery) {
+        ObjectNode json = NODES.objectNode();
+        json.put("name", storedQuery.getName());
+        json.put("type", "AQL");
+        json.put("version", storedQuery.getVersion());
+        json.put("saved", format(storedQuery.getSaved()));
+        json.put("q", storedQuery.getQ());
+        return json;
+    }
+
+    private URI location(String path) {
+        return URI.create(getUri() + path);
+    }
+
+    private void sendError(HttpExchange exchange, HttpStatus status, String message) {
+        try {
+            new Request(exchange).sendError(status, message);
+        } catch (IOException e) {
+            LOG.debug("Could not send error response.", e);
+        }
+    }
+
+    private static JsonNode withUid(JsonNode data, String uid) {
+        if (!(data instanceof ObjectNode)) {
+            return data;
+        }
+        ObjectNode copy = ((ObjectNode)data).deepCopy();
+        copy.set("uid", objectVersionId(uid));
+        return copy;
+    }
+
+    private static ObjectNode objectVersionId(String uid) {
+        ObjectNode json = NODES.objectNode();
+        json.put("_type", "OBJECT_VERSION_ID");
+        json.put("value", uid);
+        return json;
+    }
+
+    private static ObjectNode value(String value) {
+        return NODES.objectNode().put("value", value);
+    }
+
+    private static ObjectNode error(String message) {
+        return NODES.objectNode().put("message", message);
+    }
+
+    private static String find(Pattern pattern, String content) {
+        Matcher matcher = pattern.matcher(content);
+        return matcher.find() ? matcher.group(1).trim() : null;
+    }
+
+    private static String format(Instant instant) {
+        return DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(instant.atOffset(ZoneOffset.UTC));
+    }
+
+    private static Instant parseTime(String time) {
+        return OffsetDateTime.parse(time).toInstant();
+    }
+
+    private static boolean isVersionUid(String uid) {
+        return uid.contains("::");
+    }
+
+    private final class Request {
+        private final HttpExchange exchange;
+        private final List<String> path;
+        private final Map<String, String> params;
+        private final HttpHeaders headers = new HttpHeaders();
+        private byte[] body;
+
+        private Request(HttpExchange exchange) throws IOException {
+            this.exchange = exchange;
+            exchange.getRequestHeaders().forEach(headers::addAll);
+            String requestPath = exchange.getRequestURI().getRawPath().substring(basePath.length());
+            path = Arrays.stream(requestPath.split("/"))
+                    .filter(segment -> !segment.isEmpty())
+                    .map(segment -> UriUtils.decode(segment, StandardCharsets.UTF_8))
+                    .collect(Collectors.toList());
+            params = new HashMap<>();
+            String query = exchange.getRequestURI().getRawQuery();
+            if (query != null) {
+                for (String param : query.split("&")) {
+                    int index = param.indexOf('=');
+                    String key = UriUtils.decode(index < 0 ? param : param.substring(0, index), StandardCharsets.UTF_8);
+                    params.putIfAbsent(key, index < 0 ? "" : decodeQueryParam(param.substring(index + 1)));
+                }
+            }
+            body = StreamUtils.copyToByteArray(exchange.getRequestBody());
+        }
+
+        private boolean is(String method) {
+            return method.equals(exchange.getRequestMethod());
+        }
+
+        private boolean hasBody() {
+            return body.length > 0;
+        }
+
+        private JsonNode readJson() throws IOException {
+            if (!hasBody()) {
+                throw new IllegalArgumentException("Request body is missing.");
+            }
+            return objectMapper.readTree(body);
+        }
+
+        private boolean prefersRepresentation() {
+            String prefer = headers.getFirst("Prefer");
+            return prefer != null && prefer.contains("return=representation");
+        }
+
+        private void sendRepresentation(HttpStatus status, JsonNode json, HttpHeaders responseHeaders) throws IOException {
+            if (prefersRepresentation()) {
+                sendJson(status, json, responseHeaders);
+            } else {
+                sendEmpty(status == HttpStatus.OK ? HttpStatus.NO_CONTENT : status, responseHeaders);
+            }
+        }
+
+        private void sendVersion(HttpStatus status, String locationPrefix, Version version) throws IOException {
+            sendRepresentation(status, withUid(version.getData(), version.getUid()), versionHeaders(locationPrefix, version));
+        }
+
+        private void sendJson(HttpStatus status, JsonNode json, HttpHeaders responseHeaders) throws IOException {
+            byte[] bytes = objectMapper.writeValueAsBytes(json);
+            if (responsePadding > 0) {
+                byte[] padded = Arrays.copyOf(bytes, bytes.length + responsePadding);
+                Arrays.fill(padded, bytes.length, padded.length, (byte)' ');
+                bytes = padded;
+            }
+            send(status, MediaType.APPLICATION_JSON, bytes, responseHeaders);
+        }
+
+        private void sendError(HttpStatus status, @Nullable String message) throws IOException {
+            sendJson(status, error(message == null ? status.getReasonPhrase() : message), new HttpHeaders());
+        }
+
+        private void sendEmpty(HttpStatus status, HttpHeaders responseHeaders) throws IOException {
+            responseHeaders.forEach((name, values) -> exchange.getResponseHeaders().put(name, values));
+            exchange.sendResponseHeaders(status.value(), -1L);
+        }
+
+        private void send(HttpStatus status, MediaType contentType, byte[] bytes, HttpHeaders responseHeaders) throws IOException {
+            responseHeaders.forEach((name, values) -> exchange.getResponseHeaders().put(name, values));
+            exchange.getResponseHeaders().set(HttpHeaders.CONTENT_TYPE, contentType + ";charset=UTF-8");
+            exchange.sendResponseHeaders(status.value(), bytes.length);
+            exchange.getResponseBody().write(bytes);
+        }
+    }
+
+    private static String decodeQueryParam(String value) {
+        return UriUtils.decode(value.replace("+", "%20"), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,787 @@
+/*
+ * Copyright 2020-2021 Better Ltd (www.better.care)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.openehr.rest.template;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * Generates randomized compositions (canonical JSON) from an ADL 1.4 operational template, e.g. to post many different
+ * compositions in a load test. Each constrained node is filled with a value that satisfies its constraint (code lists,
+ * ranges, units, string lists) and RM attributes the template leaves open but a server requires (language, encoding,
+ * subject, times, ...) get defaults. Archetype slots and internal references are not followed, string patterns are
+ * ignored and coded texts without a code list are left out (an element gets a null flavour instead).
+ * <p>
+ * Composition {@code n} only depends on the template, the settings and the seed, so {@link #generate(long)} can be called
+ * from any thread and {@link #stream(long)} and {@link #write(Path, long)} never hold more than one composition. The size
+ * is controlled with {@link #repetitions(int)} (copies of every node that may occur more than once) and
+ * {@link #optionalProbability(double)} (chance that an optional node is present).
+ *
+ * @author Dusan Markovic
+ */
+public class OpenEhrCompositionGenerator {
+    private static final String XSI_NAMESPACE = "http://www.w3.org/2001/XMLSchema-instance";
+    private static final String RM_VERSION = "1.0.4";
+    private static final Instant DEFAULT_START_TIME = Instant.parse("2021-01-01T08:00:00Z");
+    private static final JsonNodeFactory NODES = JsonNodeFactory.instance;
+    private static final int MAX_SCALE = 6;
+    private static final Set<String> LOCATABLE_TYPES = ImmutableSet.of(
+            "COMPOSITION", "SECTION", "GENERIC_ENTRY", "ADMIN_ENTRY", "OBSERVATION", "EVALUATION", "INSTRUCTION", "ACTION",
+            "ACTIVITY", "HISTORY", "EVENT", "POINT_EVENT", "INTERVAL_EVENT", "ITEM_TREE", "ITEM_LIST", "ITEM_SINGLE",
+            "ITEM_TABLE", "CLUSTER", "ELEMENT");
+    private static final Set<String> ENTRY_TYPES = ImmutableSet.of(
+            "GENERIC_ENTRY", "ADMIN_ENTRY", "OBSERVATION", "EVALUATION", "INSTRUCTION", "ACTION");
+    private static final Map<String, String> CONCRETE_TYPES = ImmutableMap.of(
+            "EVENT", "POINT_EVENT",
+            "ITEM_STRUCTURE", "ITEM_TREE",
+            "PARTY_PROXY", "PARTY_IDENTIFIED",
+            "DV_ENCAPSULATED", "DV_PARSABLE");
+    private static final Map<String, String> OPENEHR_TERMS = ImmutableMap.<String, String>builder()
+            .put("146", "mean")
+            .put("228", "primary medical care")
+            .put("238", "other care")
+            .put("245", "active")
+            .put("253", "unknown")
+            .put("271", "no information")
+            .put("431", "persistent")
+            .put("433", "event")
+            .put("451", "episodic")
+            .put("524", "initial")
+            .put("526", "planned")
+            .put("528", "cancelled")
+            .put("529", "scheduled")
+            .put("530", "suspended")
+            .put("531", "aborted")
+            .put("532", "completed")
+            .build();
+    private static final String[] WORDS = {
+            "lorem", "ipsum", "dolor", "sit", "amet", "consectetur", "adipiscing", "elit", "sed", "do", "eiusmod", "tempor",
+            "incididunt", "ut", "labore", "et", "dolore", "magna", "aliqua", "enim", "ad", "minim", "veniam", "quis"};
+
+    private final String templateId;
+    private final String language;
+    private final Constraint definition;
+    private long seed;
+    private int repetitions = 1;
+    private double optionalProbability = 1.0d;
+    private Instant startTime = DEFAULT_START_TIME;
+    private String territory = "SI";
+    private String composerName = "Generator";
+
+    public OpenEhrCompositionGenerator(@Nonnull Path templateFile) throws IOException {
+        this(read(templateFile));
+    }
+
+    public OpenEhrCompositionGenerator(@Nonnull InputStream templateInputStream) throws IOException {
+        this(parse(templateInputStream));
+    }
+
+    private OpenEhrCompositionGenerator(Document document) {
+        Element template = document.getDocumentElement();
+        templateId = text(child(child(template, "template_id"), "value"));
+        language = text(child(child(template, "language"), "code_string"));
+        definition = new Constraint(Preconditions.checkNotNull(child(template, "definition"), "Template has no definition."), true);
+    }
+
+    public OpenEhrCompositionGenerator seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Sets the number of copies of every node that may occur more than once, limited by its occurrences (default 1).
+     */
+    public OpenEhrCompositionGenerator repetitions(int repetitions) {
+        Preconditions.checkArgument(repetitions > 0, "repetitions must be positive");
+        this.repetitions = repetitions;
+        return this;
+    }
+
+    /**
+     * Sets the probability that an optional node is generated, 1 (the default) generates all of them.
+     */
+    public OpenEhrCompositionGenerator optionalProbability(double optionalProbability) {
+        Preconditions.checkArgument(optionalProbability >= 0.0d && optionalProbability <= 1.0d, "optionalProbability must be between 0 and 1");
+        this.optionalProbability = optionalProbability;
+        return this;
+    }
+
+    /**
+     * Sets the start time of the first composition, every next one starts a minute later.
+     */
+    public OpenEhrCompositionGenerator startTime(@Nonnull Instant startTime) {
+        this.startTime = startTime;
+        return this;
+    }
+
+    public OpenEhrCompositionGenerator territory(@Nonnull String territory) {
+        this.territory = territory;
+        return this;
+    }
+
+    public OpenEhrCompositionGenerator composerName(@Nonnull String composerName) {
+        this.composerName = composerName;
+        return this;
+    }
+
+    public String getTemplateId() {
+        return templateId;
+    }
+
+    /**
+     * Generates composition number {@code index}.
+     *
+     * @param index index of the composition
+     * @return composition in canonical JSON
+     */
+    public ObjectNode generate(long index) {
+        Random random = new Random(seed * 0x9E3779B97F4A7C15L + index);
+        OffsetDateTime time = startTime.plusSeconds(index * 60L + random.nextInt(60)).atOffset(ZoneOffset.UTC);
+        return (ObjectNode)new Generation(random, time).generate(definition, null);
+    }
+
+    /**
+     * Returns compositions {@code 0} to {@code count - 1}, each generated when the stream gets to it.
+     *
+     * @param count number of compositions
+     * @return composition stream
+     */
+    public Stream<ObjectNode> stream(long count) {
+        return LongStream.range(0L, count).mapToObj(this::generate);
+    }
+
+    /**
+     * Returns a thread safe supplier of consecutive compositions, starting with composition {@code 0}.
+     *
+     * @return composition supplier
+     */
+    public Supplier<ObjectNode> supplier() {
+        AtomicLong index = new AtomicLong();
+        return () -> generate(index.getAndIncrement());
+    }
+
+    /**
+     * Writes compositions {@code 0} to {@code count - 1} to {@code <template id>-<index>.json} files in {@code directory}.
+     *
+     * @param directory target directory, created if missing
+     * @param count     number of compositions
+     * @throws IOException if a file cannot be written
+     */
+    public void write(@Nonnull Path directory, long count) throws IOException {
+        Files.createDirectories(directory);
+        ObjectWriter writer = new ObjectMapper().writer();
+        String prefix = templateId.replaceAll("[^\\w.-]", "_") + '-';
+        for (long i = 0L; i < count; i++) {
+            try (OutputStream outputStream = Files.newOutputStream(directory.resolve(prefix + i + ".json"))) {
+                writer.writeValue(outputStream, generate(i));
+            }
+        }
+    }
+
+    private static Document read(Path templateFile) throws IOException {
+        try (InputStream inputStream = Files.newInputStream(templateFile)) {
+            return parse(inputStream);
+        }
+    }
+
+    private static Document parse(InputStream inputStream) throws IOException {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+            factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+            return factory.newDocumentBuilder().parse(inputStream);
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IOException("Could not read the template.", e);
+        }
+    }
+
+    private static List<Element> children(@Nullable Element element, String name) {
+        if (element == null) {
+            return Collections.emptyList();
+        }
+        List<Element> children = new ArrayList<>();
+        for (Node node = element.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node instanceof Element && name.equals(node.getLocalName())) {
+                children.add((Element)node);
+            }
+        }
+        return children;
+    }
+
+    private static Element child(@Nullable Element element, String name) {
+        List<Element> children = children(element, name);
+        return children.isEmpty() ? null : children.get(0);
+    }
+
+    private static String text(@Nullable Element element) {
+        return element == null ? null : element.getTextContent().trim();
+    }
+
+    private static ObjectNode typed(String type) {
+        return NODES.objectNode().put("_type", type);
+    }
+
+    private static ObjectNode codePhrase(String terminologyId, String codeString) {
+        ObjectNode codePhrase = typed("CODE_PHRASE");
+        codePhrase.set("terminology_id", typed("TERMINOLOGY_ID").put("value", terminologyId));
+        codePhrase.put("code_string", codeString);
+        return codePhrase;
+    }
+
+    private static ObjectNode codedText(String value, String terminologyId, String codeString) {
+        ObjectNode codedText = typed("DV_CODED_TEXT").put("value", value);
+        codedText.set("defining_code", codePhrase(terminologyId, codeString));
+        return codedText;
+    }
+
+    private static ObjectNode openEhrCodedText(String code) {
+        return codedText(OPENEHR_TERMS.get(code), "openehr", code);
+    }
+
+    /**
+     * Bounds of an occurrences, existence or primitive range element, unbounded ends are null. Bounds are included
+     * unless the element says otherwise.
+     */
+    private static final class Interval {
+        private final BigDecimal lower;
+        private final BigDecimal upper;
+        private final boolean lowerIncluded;
+        private final boolean upperIncluded;
+
+        private Interval(@Nullable Element element) {
+            lower = bound(element, "lower");
+            upper = bound(element, "upper");
+            lowerIncluded = !"false".equals(text(child(element, "lower_included")));
+            upperIncluded = !"false".equals(text(child(element, "upper_included")));
+        }
+
+        private static BigDecimal bound(Element element, String name) {
+            if (element == null || "true".equals(text(child(element, name + "_unbounded")))) {
+                return null;
+            }
+            String value = text(child(element, name));
+            return value == null || value.isEmpty() ? null : new BigDecimal(value);
+        }
+
+        private int lowerInt(int defaultValue) {
+            return lower == null ? defaultValue : lower.intValue();
+        }
+
+        private int upperInt(int defaultValue) {
+            return upper == null ? defaultValue : upper.intValue();
+        }
+    }
+
+    private static final class Attribute {
+        private final String name;
+        private final boolean multiple;
+        private final boolean mandatory;
+        private final List<Constraint> children = new ArrayList<>();
+
+        private Attribute(Element element) {
+            name = text(child(element, "rm_attribute_name"));
+            multiple = "C_MULTIPLE_ATTRIBUTE".equals(element.getAttributeNS(XSI_NAMESPACE, "type"));
+            mandatory = new Interval(child(element, "existence")).lowerInt(0) > 0;
+            children(element, "children").forEach(child -> children.add(new Constraint(child, false)));
+        }
+    }
+
+    /**
+     * A {@code children} (or the {@code definition}) element of the template with the parts the generator uses.
+     */
+    private static final class Constraint {
+        private final String kind;
+        private final String rmTypeName;
+        private final String nodeId;
+        private final String archetypeId;
+        private final int lower;
+        private final int upper;
+        private final List<Attribute> attributes = new ArrayList<>();
+        private final Map<String, String> terms = new HashMap<>();
+        private final Element element;
+
+        private Constraint(Element element, boolean root) {
+            this.element = element;
+            kind = root ? "C_ARCHETYPE_ROOT" : element.getAttributeNS(XSI_NAMESPACE, "type");
+            rmTypeName = text(child(element, "rm_type_name"));
+            nodeId = text(child(element, "node_id"));
+            archetypeId = text(child(child(element, "archetype_id"), "value"));
+            Interval occurrences = new Interval(child(element, "occurrences"));
+            lower = occurrences.lowerInt(1);
+            upper = occurrences.upperInt(Integer.MAX_VALUE);
+            children(element, "attributes").forEach(attribute -> attributes.add(new Attribute(attribute)));
+            for (Element termDefinition : children(element, "term_definitions")) {
+                children(termDefinition, "items").stream()
+                        .filter(item -> "text".equals(item.getAttribute("id")))
+                        .findFirst()
+                        .ifPresent(item -> terms.put(termDefinition.getAttribute("code"), text(item)));
+            }
+        }
+
+        private Attribute getAttribute(String name) {
+            return attributes.stream().filter(attribute -> name.equals(attribute.name)).findFirst().orElse(null);
+        }
+    }
+
+    /**
+     * State of generating one composition.
+     */
+    private final class Generation {
+        private final Random random;
+        private final String time;
+        private final String date;
+
+        private Generation(Random random, OffsetDateTime time) {
+            this.random = random;
+            this.time = DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(time);
+            date = DateTimeFormatter.ISO_LOCAL_DATE.format(time);
+        }
+
+        private JsonNode generate(Constraint constraint, @Nullable Map<String, String> terms) {
+            switch (constraint.kind) {
+                case "C_ARCHETYPE_ROOT":
+                    return generateComplex(constraint, constraint.terms);
+                case "C_COMPLEX_OBJECT":
+                    return generateComplex(constraint, terms);
+                case "C_CODE_PHRASE":
+                    return generateCodePhrase(constraint.element);
+                case "C_DV_QUANTITY":
+                    return generateQuantity(constraint.element);
+                case "C_DV_ORDINAL":
+                    return generateOrdinal(constraint.element, terms);
+                case "C_PRIMITIVE_OBJECT":
+                    return generatePrimitive(child(constraint.element, "item"));
+                default:
+                    // archetype slots, internal and constraint references
+                    return null;
+            }
+        }
+
+        private JsonNode generateComplex(Constraint constraint, Map<String, String> terms) {
+            String rmType = CONCRETE_TYPES.getOrDefault(constraint.rmTypeName, constraint.rmTypeName);
+            ObjectNode node = typed(rmType);
+            if (LOCATABLE_TYPES.contains(rmType)) {
+                JsonNode name = generateName(constraint, terms);
+                node.set("name", name == null ? typed("DV_TEXT").put("value", term(terms, constraint.nodeId, rmType)) : name);
+                if (constraint.archetypeId != null) {
+                    ObjectNode archetypeDetails = typed("ARCHETYPED");
+                    archetypeDetails.set("archetype_id", typed("ARCHETYPE_ID").put("value", constraint.archetypeId));
+                    if ("COMPOSITION".equals(rmType)) {
+                        archetypeDetails.set("template_id", typed("TEMPLATE_ID").put("value", templateId));
+                    }
+                    archetypeDetails.put("rm_version", RM_VERSION);
+                    node.set("archetype_details", archetypeDetails);
+                    node.put("archetype_node_id", constraint.archetypeId);
+                } else {
+                    node.put("archetype_node_id", constraint.nodeId);
+                }
+            }
+            for (Attribute attribute : constraint.attributes) {
+                if (!"name".equals(attribute.name)) {
+                    JsonNode value = attribute.multiple ? generateMultiple(attribute, terms) : generateSingle(attribute, terms);
+                    if (value != null) {
+                        node.set(attribute.name, value);
+                    }
+                }
+            }
+            return complete(rmType, node, terms);
+        }
+
+        private JsonNode generateName(Constraint constraint, Map<String, String> terms) {
+            Attribute name = constraint.getAttribute("name");
+            return name == null ? null : generateSingle(name, terms);
+        }
+
+        private JsonNode generateSingle(Attribute attribute, Map<String, String> terms) {
+            List<Constraint> children = attribute.children;
+            if (children.isEmpty()) {
+                return null;
+            }
+            int start = random.nextInt(children.size());
+            for (int i = 0; i < children.size(); i++) {
+                Constraint child = children.get((start + i) % children.size());
+                if (!attribute.mandatory && child.lower == 0 && !include()) {
+                    continue;
+                }
+                JsonNode value = generate(child, terms);
+                if (value != null) {
+                    return value;
+                }
+            }
+            return null;
+        }
+
+        private JsonNode generateMultiple(Attribute attribute, Map<String, String> terms) {
+            ArrayNode items = NODES.arrayNode();
+            for (Constraint child : attribute.children) {
+                int count = child.upper > 1 ? Math.max(child.lower, Math.min(repetitions, child.upper)) : 1;
+                if (child.lower == 0 && !include()) {
+                    count = 0;
+                }
+                for (int i = 0; i < count; i++) {
+                    JsonNode item = generate(child, terms);
+                    if (item != null) {
+                        items.add(item);
+                    }
+                }
+            }
+            return items.size() == 0 ? null : items;
+        }
+
+        private boolean include() {
+            return optionalProbability >= 1.0d || random.nextDouble() < optionalProbability;
+        }
+
+        /**
+         * Fills the RM attributes the template did not constrain but are required, returns null when the node cannot be
+         * valid without them.
+         */
+        private JsonNode complete(String rmType, ObjectNode node, Map<String, String> terms) {
+            if (ENTRY_TYPES.contains(rmType)) {
+                setIfMissing(node, "language", codePhrase("ISO_639-1", language));
+                setIfMissing(node, "encoding", codePhrase("IANA_character-sets", "UTF-8"));
+                setIfMissing(node, "subject", typed("PARTY_SELF"));
+            }
+            switch (rmType) {
+                case "COMPOSITION":
+                    setIfMissing(node, "language", codePhrase("ISO_639-1", language));
+                    setIfMissing(node, "territory", codePhrase("ISO_3166-1", territory));
+                    setIfMissing(node, "category", openEhrCodedText("433"));
+                    setIfMissing(node, "composer", typed("PARTY_IDENTIFIED").put("name", composerName));
+                    if ("433".equals(node.path("category").path("defining_code").path("code_string").asText())) {
+                        setIfMissing(node, "context", complete("EVENT_CONTEXT", typed("EVENT_CONTEXT"), terms));
+                    }
+                    return node;
+                case "EVENT_CONTEXT":
+                    setIfMissing(node, "start_time", dateTime());
+                    setIfMissing(node, "setting", openEhrCodedText("238"));
+                    return node;
+                case "INSTRUCTION":
+                    setIfMissing(node, "narrative", randomDvText());
+                    return node;
+                case "ACTIVITY":
+                    setIfMissing(node, "timing", typed("DV_PARSABLE").put("value", "R1").put("formalism", "timing"));
+                    if (!node.has("action_archetype_id")) {
+                        node.put("action_archetype_id", "/.*/");
+                    }
+                    return node;
+                case "ACTION":
+                    setIfMissing(node, "time", dateTime());
+                    if (!node.has("ism_transition")) {
+                        node.set("ism_transition", typed("ISM_TRANSITION").set("current_state", openEhrCodedText("532")));
+                    }
+                    return node;
+                case "HISTORY":
+                    setIfMissing(node, "origin", dateTime());
+                    return node;
+                case "POINT_EVENT":
+                    setIfMissing(node, "time", dateTime());
+                    return node;
+                case "INTERVAL_EVENT":
+                    setIfMissing(node, "time", dateTime());
+                    setIfMissing(node, "width", typed("DV_DURATION").put("value", "PT1H"));
+                    setIfMissing(node, "math_function", openEhrCodedText("146"));
+                    return node;
+                case "CLUSTER":
+                    return node.has("items") ? node : null;
+                case "ELEMENT":
+                    if (!node.has("value")) {
+                        node.set("null_flavour", openEhrCodedText("271"));
+                    }
+                    return node;
+                case "PARTY_IDENTIFIED":
+                    if (!node.has("name")) {
+                        node.put("name", composerName);
+                    }
+                    return node;
+                case "DV_TEXT":
+                    if (!node.has("value")) {
+                        node.put("value", randomText());
+                    }
+                    return node;
+                case "DV_CODED_TEXT":
+                    if (!node.has("defining_code")) {
+                        // no code list to pick from, a made up code would not validate
+                        return null;
+                    }
+                    if (!node.has("value")) {
+                        JsonNode definingCode = node.get("defining_code");
+                        String value = codeText(definingCode.path("terminology_id").path("value").asText(), definingCode.path("code_string").asText(), terms);
+                        return typed("DV_CODED_TEXT").put("value", value).setAll(node);
+                    }
+                    return node;
+                case "DV_QUANTITY":
+                    if (!node.has("magnitude")) {
+                        node.put("magnitude", random.nextInt(1000) / 10.0d);
+                    }
+                    if (!node.has("units")) {
+                        node.put("units", "1");
+                    }
+                    return node;
+                case "DV_COUNT":
+                    if (!node.has("magnitude")) {
+                        node.put("magnitude", random.nextInt(100));
+                    }
+                    return node;
+                case "DV_PROPORTION":
+                    if (!node.has("numerator")) {
+                        node.put("numerator", (double)random.nextInt(100));
+                    }
+                    if (!node.has("denominator")) {
+                        node.put("denominator", 100.0d);
+                    }
+                    if (!node.has("type")) {
+                        node.put("type", 2);
+                    }
+                    return node;
+                case "DV_BOOLEAN":
+                    if (!node.has("value")) {
+                        node.put("value", random.nextBoolean());
+                    }
+                    return node;
+                case "DV_DATE_TIME":
+                    return setValueIfMissing(node, time);
+                case "DV_DATE":
+                    return setValueIfMissing(node, date);
+                case "DV_TIME":
+                    return setValueIfMissing(node, time.substring(time.indexOf('T') + 1));
+                case "DV_DURATION":
+                    return setValueIfMissing(node, "PT" + (1 + random.nextInt(120)) + 'M');
+                case "DV_URI":
+                case "DV_EHR_URI":
+                    return setValueIfMissing(node, "ehr:/" + randomWord());
+                case "DV_PARSABLE":
+                    setValueIfMissing(node, randomText());
+                    if (!node.has("formalism")) {
+                        node.put("formalism", "text/plain");
+                    }
+                    return node;
+                case "DV_IDENTIFIER":
+                    if (!node.has("id")) {
+                        node.put("id", Long.toString(Math.abs(random.nextLong() % 1_000_000_000L)));
+                    }
+                    return node;
+                case "DV_ORDINAL":
+                case "DV_MULTIMEDIA":
+                case "DV_INTERVAL":
+                    // no usable default without a constraint
+                    return node.size() > 1 ? node : null;
+                default:
+                    return node;
+            }
+        }
+
+        private ObjectNode setValueIfMissing(ObjectNode node, String value) {
+            if (!node.has("value")) {
+                node.put("value", value);
+            }
+            return node;
+        }
+
+        private void setIfMissing(ObjectNode node, String field, JsonNode value) {
+            if (!node.has(field) && value != null) {
+                node.set(field, value);
+            }
+        }
+
+        private JsonNode generateCodePhrase(Element element) {
+            String terminologyId = text(child(child(element, "terminology_id"), "value"));
+            List<Element> codes = children(element, "code_list");
+            if (terminologyId == null || codes.isEmpty()) {
+                return null;
+            }
+            return codePhrase(terminologyId, text(codes.get(random.nextInt(codes.size()))));
+        }
+
+        private JsonNode generateQuantity(Element element) {
+            List<Element> items = children(element, "list");
+            ObjectNode quantity = typed("DV_QUANTITY");
+            if (items.isEmpty()) {
+                return complete("DV_QUANTITY", quantity, null);
+            }
+            Element item = items.get(random.nextInt(items.size()));
+            Interval precision = new Interval(child(item, "precision"));
+            Interval magnitude = new Interval(child(item, "magnitude"));
+            if (precision.upper != null && precision.upper.signum() >= 0) {
+                int scale = precision.upper.intValue();
+                quantity.put("magnitude", randomDecimal(magnitude, 0.0d, 100.0d, scale, scale).doubleValue());
+                quantity.put("units", text(child(item, "units")));
+                quantity.put("precision", scale);
+            } else {
+                quantity.put("magnitude", randomDecimal(magnitude, 0.0d, 100.0d, 1, MAX_SCALE).doubleValue());
+                quantity.put("units", text(child(item, "units")));
+            }
+            return quantity;
+        }
+
+        private JsonNode generateOrdinal(Element element, Map<String, String> terms) {
+            List<Element> items = children(element, "list");
+            if (items.isEmpty()) {
+                return null;
+            }
+            Element item = items.get(random.nextInt(items.size()));
+            Element definingCode = child(child(item, "symbol"), "defining_code");
+            String terminologyId = text(child(child(definingCode, "terminology_id"), "value"));
+            String code = text(child(definingCode, "code_string"));
+            ObjectNode ordinal = typed("DV_ORDINAL");
+            ordinal.put("value", Integer.parseInt(text(child(item, "value"))));
+            ordinal.set("symbol", codedText(codeText(terminologyId, code, terms), terminologyId, code));
+            return ordinal;
+        }
+
+        private JsonNode generatePrimitive(@Nullable Element item) {
+            if (item == null) {
+                return null;
+            }
+            List<Element> list = children(item, "list");
+            switch (item.getAttributeNS(XSI_NAMESPACE, "type")) {
+                case "C_STRING":
+                    return list.isEmpty() ? NODES.textNode(randomText()) : NODES.textNode(text(list.get(random.nextInt(list.size()))));
+                case "C_INTEGER":
+                    if (!list.isEmpty()) {
+                        return NODES.numberNode(Integer.parseInt(text(list.get(random.nextInt(list.size())))));
+                    }
+                    return NODES.numberNode(randomDecimal(new Interval(child(item, "range")), 0.0d, 100.0d, 0, 0).intValue());
+                case "C_REAL":
+                    return NODES.numberNode(randomDecimal(new Interval(child(item, "range")), 0.0d, 100.0d, 1, MAX_SCALE).doubleValue());
+                case "C_BOOLEAN":
+                    boolean trueValid = !"false".equals(text(child(item, "true_valid")));
+                    boolean falseValid = !"false".equals(text(child(item, "false_valid")));
+                    return NODES.booleanNode(trueValid && (!falseValid || random.nextBoolean()));
+                case "C_DATE_TIME":
+                    return NODES.textNode(time);
+                case "C_DATE":
+                    return NODES.textNode(date);
+                case "C_TIME":
+                    return NODES.textNode(time.substring(time.indexOf('T') + 1));
+                case "C_DURATION":
+                    return NODES.textNode("PT" + (1 + random.nextInt(120)) + 'M');
+                default:
+                    return null;
+            }
+        }
+
+        /**
+         * Returns a random value inside the range with {@code minScale} decimals, or more up to {@code maxScale} when no
+         * such value is inside. The value is rounded toward the inside of the range, so an excluded bound is never hit.
+         */
+        private BigDecimal randomDecimal(Interval range, double defaultLower, double defaultUpper, int minScale, int maxScale) {
+            BigDecimal lower = range.lower == null
+                    ? (range.upper == null ? BigDecimal.valueOf(defaultLower) : range.upper.subtract(BigDecimal.valueOf(defaultUpper)))
+                    : range.lower;
+            BigDecimal upper = range.upper == null ? lower.add(BigDecimal.valueOf(defaultUpper - defaultLower)) : range.upper;
+            BigDecimal first = null;
+            BigDecimal last = null;
+            int scale = minScale;
+            for (; scale <= maxScale; scale++) {
+                BigDecimal step = BigDecimal.ONE.movePointLeft(scale);
+                first = lower.setScale(scale, RoundingMode.CEILING);
+                if (!range.lowerIncluded && first.compareTo(lower) == 0) {
+                    first = first.add(step);
+                }
+                last = upper.setScale(scale, RoundingMode.FLOOR);
+                if (!range.upperIncluded && last.compareTo(upper) == 0) {
+                    last = last.subtract(step);
+                }
+                if (first.compareTo(last) <= 0) {
+                    break;
+                }
+            }
+            if (first.compareTo(last) >= 0) {
+                // a single value or none at this precision
+                return first;
+            }
+            return first.add(last.subtract(first).multiply(BigDecimal.valueOf(random.nextDouble())))
+                    .setScale(Math.min(scale, maxScale), RoundingMode.FLOOR);
+        }
+
+        private String codeText(String terminologyId, String code, @Nullable Map<String, String> terms) {
+            if ("local".equals(terminologyId) && terms != null && terms.containsKey(code)) {
+                return terms.get(code);
+            }
+            if ("openehr".equals(terminologyId) && OPENEHR_TERMS.containsKey(code)) {
+                return OPENEHR_TERMS.get(code);
+            }
+            return code;
+        }
+
+        private String term(@Nullable Map<String, String> terms, String nodeId, String defaultValue) {
+            String term = terms == null || nodeId == null ? null : terms.get(nodeId);
+            return term == null ? defaultValue : term;
+        }
+
+        private ObjectNode dateTime() {
+            return typed("DV_DATE_TIME").put("value", time);
+        }
+
+        private ObjectNode randomDvText() {
+            return typed("DV_TEXT").put("value", randomText());
+        }
+
+        private String randomText() {
+            int words = 1 + random.nextInt(6);
+            StringBuilder text = new StringBuilder(randomWord());
+            for (int i = 1; i < words; i++) {
+                text.append(' ').append(randomWord());
+            }
+            return text.toString();
+        }
+
+        private String randomWord() {
+            return WORDS[random.nextInt(WORDS.length)];
+        }
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2020-2021 Better Ltd (www.better.care)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.openehr.rest.template;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.openehr.data.OpenEhrTemplateDefinition;
+import org.openehr.rest.template.TemplateBulkLoadReport.Outcome;
+import org.openehr.rest.template.TemplateBulkLoadReport.TemplateResult;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.RestClientResponseException;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.Nonnull;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Uploads all operational templates ({@code *.opt}) from a directory with up to {@code parallelism} uploads at once.
+ * Templates listed by the server before the run are skipped, so loading the same directory again only uploads new
+ * templates; a 409 response is reported as {@link Outcome#CONFLICT}, not as a failure.
+ *
+ * @author Dusan Markovic
+ */
+public class OpenEhrTemplateBulkLoader implements Closeable {
+    private static final XMLInputFactory XML_INPUT_FACTORY = createXmlInputFactory();
+
+    private final RestTemplate restTemplate;
+    private final OpenEhrTemplateUploader uploader;
+    private final int parallelism;
+    private final ExecutorService executorService;
+    private final boolean ownsExecutorService;
+
+    /**
+     * @param restTemplate rest template used to list the templates on the server
+     * @param uploader     template uploader
+     * @param parallelism  maximum number of uploads at once
+     */
+    public OpenEhrTemplateBulkLoader(@Nonnull RestTemplate restTemplate, @Nonnull OpenEhrTemplateUploader uploader, int parallelism) {
+        this(restTemplate,
+             uploader,
+             parallelism,
+             Executors.newFixedThreadPool(parallelism, new ThreadFactoryBuilder().setNameFormat("template-loader-%d").setDaemon(true).build()),
+             true);
+    }
+
+    public OpenEhrTemplateBulkLoader(
+            @Nonnull RestTemplate restTemplate,
+            @Nonnull OpenEhrTemplateUploader uploader,
+            int parallelism,
+            @Nonnull ExecutorService executorService) {
+        this(restTemplate, uploader, parallelism, executorService, false);
+    }
+
+    private OpenEhrTemplateBulkLoader(
+            RestTemplate restTemplate,
+            OpenEhrTemplateUploader uploader,
+            int parallelism,
+            ExecutorService executorService,
+            boolean ownsExecutorService) {
+        Preconditions.checkArgument(parallelism > 0, "parallelism must be positive");
+        this.restTemplate = restTemplate;
+        this.uploader = uploader;
+        this.parallelism = parallelism;
+        this.executorService = executorService;
+        this.ownsExecutorService = ownsExecutorService;
+    }
+
+    /**
+     * Uploads the {@code *.opt} files in {@code directory} and its subdirectories.
+     *
+     * @param directory template directory
+     * @return report
+     * @throws IOException if the directory cannot be read
+     */
+    public TemplateBulkLoadReport load(@Nonnull Path directory) throws IOException {
+        List<Path> templateFiles;
+        try (Stream<Path> files = Files.walk(directory)) {
+            templateFiles = files
+                    .filter(Files::isRegularFile)
+                    .filter(file -> file.getFileName().toString().endsWith(".opt"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        return load(templateFiles);
+    }
+
+    public TemplateBulkLoadReport load(@Nonnull Collection<Path> templateFiles) {
+        long start = System.nanoTime();
+        Set<String> knownTemplateIds = ConcurrentHashMap.newKeySet();
+        knownTemplateIds.addAll(getServerTemplateIds());
+
+        List<Path> files = new ArrayList<>(templateFiles);
+        TemplateResult[] results = new TemplateResult[files.size()];
+        CompletionService<Integer> completionService = new ExecutorCompletionService<>(executorService);
+        int submitted = 0;
+        int completed = 0;
+        try {
+            while (completed < files.size()) {
+                while (submitted < files.size() && submitted - completed < parallelism) {
+                    int index = submitted++;
+                    completionService.submit(() -> {
+                        results[index] = load(files.get(index), knownTemplateIds);
+                        return index;
+                    });
+                }
+                completionService.take().get();
+                completed++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while uploading templates.");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        return new TemplateBulkLoadReport(Duration.ofNanos(System.nanoTime() - start), Collections.unmodifiableList(Arrays.asList(results)));
+    }
+
+    @Override
+    public void close() {
+        if (ownsExecutorService) {
+            executorService.shutdownNow();
+        }
+    }
+
+    protected Set<String> getServerTemplateIds() {
+        OpenEhrTemplateDefinition[] templates = restTemplate.getForObject(uploader.getTemplateUrl(), OpenEhrTemplateDefinition[].class);
+        return templates == null
+                ? Collections.emptySet()
+                : Arrays.stream(templates).map(OpenEhrTemplateDefinition::getTemplateId).filter(Objects::nonNull).collect(Collectors.toSet());
+    }
+
+    private TemplateResult load(Path file, Set<String> knownTemplateIds) {
+        long start = System.nanoTime();
+        String templateId = null;
+        try {
+            templateId = readTemplateId(file);
+            if (templateId == null) {
+                return new TemplateResult(file, null, Outcome.FAILED, 0, elapsed(start), "No template_id found.");
+            }
+            if (!knownTemplateIds.add(templateId)) {
+                return new TemplateResult(file, templateId, Outcome.SKIPPED, 0, elapsed(start), null);
+            }
+            ResponseEntity<String> response = uploader.upload(file);
+            return createResult(file, templateId, response.getStatusCodeValue(), start, response.getBody());
+        } catch (RestClientResponseException e) {
+            return createResult(file, templateId, e.getRawStatusCode(), start, e.getResponseBodyAsString());
+        } catch (IOException | XMLStreamException | RuntimeException e) {
+            return new TemplateResult(file, templateId, Outcome.FAILED, 0, elapsed(start), e.toString());
+        }
+    }
+
+    private static TemplateResult createResult(Path file, String templateId, int status, long start, String responseBody) {
+        if (status == HttpStatus.CONFLICT.value()) {
+            return new TemplateResult(file, templateId, Outcome.CONFLICT, status, elapsed(start), null);
+        }
+        if (HttpStatus.Series.resolve(status) == HttpStatus.Series.SUCCESSFUL) {
+            return new TemplateResult(file, templateId, Outcome.UPLOADED, status, elapsed(start), null);
+        }
+        return new TemplateResult(file, templateId, Outcome.FAILED, status, elapsed(start), responseBody);
+    }
+
+    /**
+     * Reads {@code template_id/value} of an operational template, only the start of the file is parsed.
+     *
+     * @param file template file
+     * @return template id, null if the file does not have one
+     */
+    protected static String readTemplateId(Path file) throws IOException, XMLStreamException {
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(inputStream);
+            try {
+                int depth = 0;
+                boolean inTemplateId = false;
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamReader.START_ELEMENT) {
+                        depth++;
+                        if (depth == 2 && "template_id".equals(reader.getLocalName())) {
+                            inTemplateId = true;
+                        } else if (inTemplateId && depth == 3 && "value".equals(reader.getLocalName())) {
+                            return reader.getElementText().trim();
+                        }
+                    } else if (event == XMLStreamReader.END_ELEMENT) {
+                        depth--;
+                        inTemplateId = inTemplateId && depth >= 2;
+                    }
+                }
+                return null;
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    private static Duration elapsed(long start) {
+        return Duration.ofNanos(System.nanoTime() - start);
+    }
+
+    private static XMLInputFactory createXmlInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+}
@@ -0,0 +1,316 @@
+/*
+ * Copyright 2020-2021 Better Ltd (www.better.care)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.openehr.rest.template;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.Striped;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.openehr.data.OpenEhrTemplateDefinition;
+import org.openehr.rest.exception.OpenEhrRestException;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Client-side cache of templates keyed by template id, and of the template list. Entries are returned without a request
+ * while they are younger than {@code timeToLive}; older entries are revalidated with a conditional GET
+ * ({@code If-None-Match} and {@code If-Modified-Since} from the cached response) and only downloaded again when the
+ * server does not answer 304. Concurrent lookups of a stale entry share one revalidation. Only 404 means that a template
+ * does not exist; other error responses fail the first load and keep the stale entry on revalidation, they are never
+ * cached. At most {@code maximumSize} templates are kept, least recently used ones are evicted.
+ * Templates are cached as {@code templateType}, converted by the rest template, so a parsed type also saves the parse.
+ *
+ * @param <T> template type, e.g. {@link String} for the XML
+ * @author Dusan Markovic
+ */
+public class OpenEhrTemplateCache<T> {
+    private final RestTemplate restTemplate;
+    private final String templateUrl;
+    private final Class<T> templateType;
+    private final long timeToLiveNanos;
+    private final Cache<String, Entry<T>> templates;
+    private final Striped<Lock> revalidationLocks = Striped.lock(64);
+    private final AtomicReference<Entry<List<OpenEhrTemplateDefinition>>> templateList = new AtomicReference<>();
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder notModifiedCount = new LongAdder();
+    private final LongAdder downloadCount = new LongAdder();
+
+    /**
+     * @param restTemplate rest template
+     * @param templateUrl  url of the template endpoint, e.g. {@code <base>/definition/template/adl1.4}
+     * @param templateType type templates are read as
+     * @param maximumSize  maximum number of cached templates
+     * @param timeToLive   time an entry is used without revalidation
+     */
+    public OpenEhrTemplateCache(
+            @Nonnull RestTemplate restTemplate,
+            @Nonnull String templateUrl,
+            @Nonnull Class<T> templateType,
+            long maximumSize,
+            @Nonnull Duration timeToLive) {
+        Preconditions.checkArgument(!timeToLive.isNegative(), "timeToLive must not be negative");
+        this.restTemplate = restTemplate;
+        this.templateUrl = templateUrl;
+        this.templateType = templateType;
+        timeToLiveNanos = timeToLive.toNanos();
+        templates = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+    }
+
+    /**
+     * Returns the template, from the cache if possible.
+     *
+     * @param templateId template id
+     * @return template or empty if the server does not have it
+     */
+    public Optional<T> getTemplate(@Nonnull String templateId) {
+        Entry<T> entry = templates.getIfPresent(templateId);
+        if (entry == null) {
+            try {
+                entry = templates.get(templateId, () -> download(templateId));
+            } catch (ExecutionException | UncheckedExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException)e.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+            if (entry.value == null) {
+                templates.asMap().remove(templateId, entry);
+            }
+        } else if (entry.isStale(timeToLiveNanos)) {
+            entry = revalidate(entry, templateId);
+            if (entry == null) {
+                // invalidated while waiting for the revalidation of another caller
+                return getTemplate(templateId);
+            }
+        } else {
+            hitCount.increment();
+        }
+        return Optional.ofNullable(entry.value);
+    }
+
+    /**
+     * Returns the template list, from the cache if possible.
+     *
+     * @return template definitions
+     */
+    public List<OpenEhrTemplateDefinition> getTemplateDefinitions() {
+        Entry<List<OpenEhrTemplateDefinition>> entry = templateList.get();
+        if (entry != null && !entry.isStale(timeToLiveNanos)) {
+            hitCount.increment();
+            return entry.value;
+        }
+        synchronized (templateList) {
+            Entry<List<OpenEhrTemplateDefinition>> current = templateList.get();
+            if (current != null && current != entry) {
+                // loaded or revalidated by another caller
+                hitCount.increment();
+                return current.value;
+            }
+            Entry<List<OpenEhrTemplateDefinition>> loaded;
+            if (current == null) {
+                downloadCount.increment();
+                loaded = toTemplateListEntry(exchange(templateUrl, OpenEhrTemplateDefinition[].class, new HttpHeaders()));
+            } else {
+                loaded = revalidateTemplateList(current);
+            }
+            // not set when invalidated meanwhile
+            templateList.compareAndSet(current, loaded);
+            return loaded.value;
+        }
+    }
+
+    public void invalidate(@Nonnull String templateId) {
+        templates.invalidate(templateId);
+        templateList.set(null);
+    }
+
+    public void invalidateAll() {
+        templates.invalidateAll();
+        templateList.set(null);
+    }
+
+    /**
+     * Returns the number of lookups answered without a request.
+     *
+     * @return hit count
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * Returns the number of revalidations answered with 304.
+     *
+     * @return not modified count
+     */
+    public long getNotModifiedCount() {
+        return notModifiedCount.sum();
+    }
+
+    /**
+     * Returns the number of responses with a body, i.e. first loads and revalidations of modified entries.
+     *
+     * @return download count
+     */
+    public long getDownloadCount() {
+        return downloadCount.sum();
+    }
+
+    private Entry<T> download(String templateId) {
+        ResponseEntity<T> response = exchange(templateUrl + "/{template_id}", templateType, new HttpHeaders(), templateId);
+        if (response.getStatusCode() != HttpStatus.NOT_FOUND) {
+            checkSuccess(response);
+        }
+        downloadCount.increment();
+        return toEntry(response);
+    }
+
+    /**
+     * Revalidates {@code stale} unless another caller already did, the cached entry is only replaced while it is still
+     * {@code stale}. Returns the current entry (the stale one if the server failed to answer), an entry without a value if
+     * the template no longer exists, or null if the entry was invalidated meanwhile.
+     */
+    private Entry<T> revalidate(Entry<T> stale, String templateId) {
+        Lock lock = revalidationLocks.get(templateId);
+        lock.lock();
+        try {
+            Entry<T> current = templates.getIfPresent(templateId);
+            if (current != stale) {
+                if (current != null) {
+                    hitCount.increment();
+                }
+                return current;
+            }
+            ResponseEntity<T> response = exchange(templateUrl + "/{template_id}", templateType, stale.createConditionalHeaders(), templateId);
+            Entry<T> entry;
+            if (response.getStatusCode() == HttpStatus.NOT_MODIFIED) {
+                notModifiedCount.increment();
+                entry = stale.revalidated();
+            } else if (response.getStatusCode() == HttpStatus.NOT_FOUND) {
+                templates.asMap().remove(templateId, stale);
+                return toEntry(response);
+            } else if (response.getStatusCode().is2xxSuccessful()) {
+                downloadCount.increment();
+                entry = toEntry(response);
+            } else {
+                // server error or the like, keep the stale entry and try again on the next lookup
+                return stale;
+            }
+            templates.asMap().replace(templateId, stale, entry);
+            return entry;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Entry<List<OpenEhrTemplateDefinition>> revalidateTemplateList(Entry<List<OpenEhrTemplateDefinition>> entry) {
+        ResponseEntity<OpenEhrTemplateDefinition[]> response = exchange(templateUrl, OpenEhrTemplateDefinition[].class, entry.createConditionalHeaders());
+        if (response.getStatusCode() == HttpStatus.NOT_MODIFIED) {
+            notModifiedCount.increment();
+            return entry.revalidated();
+        }
+        if (!response.getStatusCode().is2xxSuccessful()) {
+            // keep the stale list and try again on the next lookup
+            return entry;
+        }
+        downloadCount.increment();
+        return toTemplateListEntry(response);
+    }
+
+    private <R> ResponseEntity<R> exchange(String url, Class<R> type, HttpHeaders headers, Object... uriVariables) {
+        if (headers.getAccept().isEmpty()) {
+            headers.setAccept(Collections.singletonList(type == OpenEhrTemplateDefinition[].class ? MediaType.APPLICATION_JSON : MediaType.APPLICATION_XML));
+        }
+        try {
+            return restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(headers), type, uriVariables);
+        } catch (HttpStatusCodeException e) {
+            // rest templates with the default error handler throw, handle the status the same way in both cases
+            return ResponseEntity.status(e.getRawStatusCode()).headers(e.getResponseHeaders()).build();
+        }
+    }
+
+    private static void checkSuccess(ResponseEntity<?> response) {
+        if (!response.getStatusCode().is2xxSuccessful()) {
+            throw new OpenEhrRestException(response.getStatusCode(), response.getHeaders());
+        }
+    }
+
+    private static <R> Entry<R> toEntry(ResponseEntity<R> response) {
+        return new Entry<>(response.getStatusCode().is2xxSuccessful() ? response.getBody() : null, response.getHeaders());
+    }
+
+    private static Entry<List<OpenEhrTemplateDefinition>> toTemplateListEntry(ResponseEntity<OpenEhrTemplateDefinition[]> response) {
+        checkSuccess(response);
+        OpenEhrTemplateDefinition[] body = response.getBody();
+        return new Entry<>(
+                body == null ? Collections.emptyList() : Collections.unmodifiableList(Arrays.asList(body)),
+                response.getHeaders());
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final String eTag;
+        private final long lastModified;
+        private final long validatedAt;
+
+        private Entry(V value, HttpHeaders headers) {
+            this(value, headers.getETag(), headers.getLastModified(), System.nanoTime());
+        }
+
+        private Entry(V value, String eTag, long lastModified, long validatedAt) {
+            this.value = value;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.validatedAt = validatedAt;
+        }
+
+        private boolean isStale(long timeToLiveNanos) {
+            return System.nanoTime() - validatedAt >= timeToLiveNanos;
+        }
+
+        private Entry<V> revalidated() {
+            return new Entry<>(value, eTag, lastModified, System.nanoTime());
+        }
+
+        private HttpHeaders createConditionalHeaders() {
+            HttpHeaders headers = new HttpHeaders();
+            if (eTag != null) {
+                headers.setIfNoneMatch(eTag);
+            }
+            if (lastModified >= 0L) {
+                headers.setIfModifiedSince(lastModified);
+            }
+            return headers;
+        }
+    }
+}
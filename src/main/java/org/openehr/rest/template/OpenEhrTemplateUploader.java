@@ -0,0 +1,167 @@
+/*
+ * Copyright 2020-2021 Better Ltd (www.better.care)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.openehr.rest.template;
+
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.StreamingHttpOutputMessage;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.converter.StringHttpMessageConverter;
+import org.springframework.lang.Nullable;
+import org.springframework.web.client.ResponseErrorHandler;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+
+/**
+ * Uploads ADL 1.4 operational templates without reading them into memory: the body is streamed from a file, resource or
+ * input stream straight into the request. With a known content length the request has a {@code Content-Length} header,
+ * otherwise it is sent chunked. Memory use stays flat only when the request factory does not buffer request bodies, see
+ * {@link org.openehr.rest.auth.RestClientOptions#bufferRequestBody(boolean)}.
+ *
+ * @author Dusan Markovic
+ */
+public class OpenEhrTemplateUploader {
+    public static final String TEMPLATE_PATH = "/definition/template/adl1.4";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final RestTemplate restTemplate;
+    private final String templateUrl;
+
+    /**
+     * @param requestFactory request factory, preferably one that streams request bodies
+     * @param templateUrl    url of the template endpoint, e.g. {@code <base>/definition/template/adl1.4}
+     * @param errorHandler   response error handler, the default one if null
+     */
+    public OpenEhrTemplateUploader(
+            @Nonnull ClientHttpRequestFactory requestFactory,
+            @Nonnull String templateUrl,
+            @Nullable ResponseErrorHandler errorHandler) {
+        restTemplate = new RestTemplate(requestFactory);
+        restTemplate.setMessageConverters(Collections.singletonList(new StringHttpMessageConverter(StandardCharsets.UTF_8)));
+        if (errorHandler != null) {
+            restTemplate.setErrorHandler(errorHandler);
+        }
+        this.templateUrl = templateUrl;
+    }
+
+    public String getTemplateUrl() {
+        return templateUrl;
+    }
+
+    public ResponseEntity<String> upload(@Nonnull Path path) throws IOException {
+        return upload(path, new HttpHeaders());
+    }
+
+    /**
+     * Uploads the template file, its size is sent as {@code Content-Length}.
+     *
+     * @param path    template file
+     * @param headers additional request headers, e.g. {@code Prefer}
+     * @return server response
+     * @throws IOException if the file cannot be read
+     */
+    public ResponseEntity<String> upload(@Nonnull Path path, @Nonnull HttpHeaders headers) throws IOException {
+        long size = Files.size(path);
+        return upload(headers, size, body -> {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                WritableByteChannel target = Channels.newChannel(body);
+                long position = 0L;
+                while (position < size) {
+                    position += channel.transferTo(position, size - position, target);
+                }
+            }
+        });
+    }
+
+    /**
+     * Uploads the template resource. The content length is only sent when it is cheap to get, i.e. for file resources.
+     *
+     * @param resource template resource
+     * @return server response
+     * @throws IOException if the resource cannot be read
+     */
+    public ResponseEntity<String> upload(@Nonnull Resource resource) throws IOException {
+        if (resource.isFile()) {
+            return upload(resource.getFile().toPath());
+        }
+        try (InputStream inputStream = resource.getInputStream()) {
+            return upload(inputStream, -1L);
+        }
+    }
+
+    public ResponseEntity<String> upload(@Nonnull InputStream inputStream, long contentLength) {
+        return upload(inputStream, contentLength, new HttpHeaders());
+    }
+
+    /**
+     * Uploads the template read from {@code inputStream}, which is not closed.
+     *
+     * @param inputStream   template content
+     * @param contentLength content length in bytes, negative if not known
+     * @param headers       additional request headers, e.g. {@code Prefer}
+     * @return server response
+     */
+    public ResponseEntity<String> upload(@Nonnull InputStream inputStream, long contentLength, @Nonnull HttpHeaders headers) {
+        return upload(headers, contentLength, body -> {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                body.write(buffer, 0, read);
+            }
+        });
+    }
+
+    private ResponseEntity<String> upload(HttpHeaders headers, long contentLength, StreamingHttpOutputMessage.Body body) {
+        return restTemplate.execute(
+                templateUrl,
+                HttpMethod.POST,
+                request -> {
+                    request.getHeaders().addAll(headers);
+                    request.getHeaders().setContentType(MediaType.APPLICATION_XML);
+                    if (!headers.containsKey(HttpHeaders.ACCEPT)) {
+                        request.getHeaders().setAccept(Collections.singletonList(MediaType.APPLICATION_XML));
+                    }
+                    if (contentLength >= 0L) {
+                        request.getHeaders().setContentLength(contentLength);
+                    }
+                    writeBody(request, body);
+                },
+                restTemplate.responseEntityExtractor(String.class));
+    }
+
+    private static void writeBody(ClientHttpRequest request, StreamingHttpOutputMessage.Body body) throws IOException {
+        if (request instanceof StreamingHttpOutputMessage) {
+            ((StreamingHttpOutputMessage)request).setBody(body);
+        } else {
+            body.writeTo(request.getBody());
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2020-2021 Better Ltd (www.better.care)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.openehr.rest.template;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Result of a {@link OpenEhrTemplateBulkLoader} run, one entry per template file in the order the files were given.
+ *
+ * @author Dusan Markovic
+ */
+public class TemplateBulkLoadReport {
+    private final Duration elapsed;
+    private final List<TemplateResult> templateResults;
+
+    public TemplateBulkLoadReport(Duration elapsed, List<TemplateResult> templateResults) {
+        this.elapsed = elapsed;
+        this.templateResults = templateResults;
+    }
+
+    public Duration getElapsed() {
+        return elapsed;
+    }
+
+    public List<TemplateResult> getTemplateResults() {
+        return templateResults;
+    }
+
+    public List<TemplateResult> getTemplateResults(Outcome outcome) {
+        return templateResults.stream().filter(result -> result.getOutcome() == outcome).collect(Collectors.toList());
+    }
+
+    public long getCount(Outcome outcome) {
+        return templateResults.stream().filter(result -> result.getOutcome() == outcome).count();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-40s %-9s %6s %10s  %s%n", "template", "outcome", "status", "ms", "error"));
+        for (TemplateResult result : templateResults) {
+            sb.append(String.format("%-40s %-9s %6s %10.1f  %s%n",
+                                    result.getTemplateId() == null ? result.getPath().getFileName() : result.getTemplateId(),
+                                    result.getOutcome(),
+                                    result.getStatus() == 0 ? "" : String.valueOf(result.getStatus()),
+                                    result.getDuration().toNanos() / 1_000_000.0d,
+                                    result.getError() == null ? "" : result.getError()));
+        }
+        for (Outcome outcome : Outcome.values()) {
+            sb.append(outcome.name().toLowerCase()).append(": ").append(getCount(outcome)).append(", ");
+        }
+        sb.append("elapsed: ").append(elapsed.toMillis()).append(" ms");
+        return sb.toString();
+    }
+
+    public enum Outcome {
+        /**
+         * Uploaded by this run.
+         */
+        UPLOADED,
+        /**
+         * Already listed by the server (or by another file in the same run), not uploaded.
+         */
+        SKIPPED,
+        /**
+         * Server responded with 409, i.e. it was uploaded concurrently or the listing is not complete.
+         */
+        CONFLICT,
+        FAILED
+    }
+
+    public static class TemplateResult {
+        private final Path path;
+        private final String templateId;
+        private final Outcome outcome;
+        private final int status;
+        private final Duration duration;
+        private final String error;
+
+        public TemplateResult(Path path, String templateId, Outcome outcome, int status, Duration duration, String error) {
+            this.path = path;
+            this.templateId = templateId;
+            this.outcome = outcome;
+            this.status = status;
+            this.duration = duration;
+            this.error = error;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        /**
+         * Returns template id read from the file, null if it could not be read.
+         *
+         * @return template id
+         */
+        public String getTemplateId() {
+            return templateId;
+        }
+
+        public Outcome getOutcome() {
+            return outcome;
+        }
+
+        /**
+         * Returns HTTP status of the upload, 0 if there was no response.
+         *
+         * @return status code
+         */
+        public int getStatus() {
+            return status;
+        }
+
+        /**
+         * Returns time spent reading the template id and uploading the template.
+         *
+         * @return duration
+         */
+        public Duration getDuration() {
+            return duration;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2020-2021 Better Ltd (www.better.care)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.openehr.utils;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Executors for running blocking client calls. Virtual threads are used when requested and the JVM has them (Java 21+),
+ * they are looked up at runtime so that the project itself can stay on an older Java baseline.
+ *
+ * @author Dusan Markovic
+ */
+public final class ClientExecutors {
+    private static final MethodHandle NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findVirtualThreadPerTaskExecutor();
+
+    private ClientExecutors() {
+    }
+
+    public static boolean isVirtualThreadSupported() {
+        return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * Returns executor that starts a new virtual thread for each task.
+     *
+     * @return executor
+     * @throws UnsupportedOperationException if the JVM has no virtual threads
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        if (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR == null) {
+            throw new UnsupportedOperationException("Virtual threads are not supported by Java " + Runtime.version().feature() + '.');
+        }
+        try {
+            return (ExecutorService)NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invokeExact();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    /**
+     * Returns virtual thread per task executor if {@code virtualThreads} is set and supported, otherwise a fixed pool of
+     * {@code platformThreads} daemon threads.
+     *
+     * @param virtualThreads   use virtual threads when available
+     * @param platformThreads  number of threads when virtual threads are not used
+     * @param threadNamePrefix name prefix of the platform threads
+     * @return executor
+     */
+    public static ExecutorService newClientExecutor(boolean virtualThreads, int platformThreads, String threadNamePrefix) {
+        if (virtualThreads && isVirtualThreadSupported()) {
+            return newVirtualThreadPerTaskExecutor();
+        }
+        return Executors.newFixedThreadPool(
+                platformThreads,
+                new ThreadFactoryBuilder().setNameFormat(threadNamePrefix + "-%d").setDaemon(true).build());
+    }
+
+    private static MethodHandle findVirtualThreadPerTaskExecutor() {
+        try {
+            return MethodHandles.publicLookup().findStatic(
+                    Executors.class,
+                    "newVirtualThreadPerTaskExecutor",
+                    MethodType.methodType(ExecutorService.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2020-2021 Better Ltd (www.better.care)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.openehr.utils;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.nedap.archie.rm.RMObject;
+import com.nedap.archie.rm.composition.Composition;
+import com.nedap.archie.rm.ehr.Ehr;
+import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.util.ClassUtils;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry of all RM classes found in {@code com.nedap.archie.rm} and its subpackages, indexed by RM type name and by class.
+ * It is built once, on first use, so that type id resolution never has to fall back to reflection.
+ *
+ * @author Dusan Markovic
+ */
+public final class RmTypeRegistry {
+    private static final String RM_PACKAGE_NAME = RMObject.class.getPackage().getName();
+    // when the same simple name exists in more than one package, these packages win (in this order)
+    private static final List<String> PREFERRED_PACKAGE_NAMES = ImmutableList.of(
+            Composition.class.getPackage().getName(),
+            Ehr.class.getPackage().getName());
+
+    private static final RmTypeRegistry INSTANCE = new RmTypeRegistry(scanRmClasses(RMObject.class.getClassLoader()));
+
+    private final Map<String, Class<?>> classesByTypeName;
+    private final ConcurrentMap<Class<?>, String> typeNamesByClass;
+    private final Set<Class<?>> finalRmClasses;
+
+    private RmTypeRegistry(Map<String, Class<?>> classesByTypeName) {
+        this.classesByTypeName = ImmutableMap.copyOf(classesByTypeName);
+        typeNamesByClass = new ConcurrentHashMap<>(classesByTypeName.size() * 2);
+        classesByTypeName.forEach((typeName, clazz) -> typeNamesByClass.put(clazz, typeName));
+
+        Set<Class<?>> extendedClasses = new HashSet<>();
+        for (Class<?> clazz : classesByTypeName.values()) {
+            for (Class<?> superclass = clazz.getSuperclass(); superclass != null; superclass = superclass.getSuperclass()) {
+                extendedClasses.add(superclass);
+            }
+        }
+        finalRmClasses = classesByTypeName.values().stream()
+                .filter(clazz -> !Modifier.isAbstract(clazz.getModifiers()) && !extendedClasses.contains(clazz))
+                .collect(ImmutableSet.toImmutableSet());
+    }
+
+    public static RmTypeRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns RM class for RM type name, generic parameters (e.g. {@code DV_INTERVAL<DV_QUANTITY>}) are ignored.
+     *
+     * @param rmTypeName RM type name
+     * @return RM class or {@code null} if there is no RM class with this name
+     */
+    @Nullable
+    public Class<?> getRmClass(@Nonnull String rmTypeName) {
+        int genericsTypeIndex = rmTypeName.indexOf('<');
+        return classesByTypeName.get(genericsTypeIndex == -1 ? rmTypeName : rmTypeName.substring(0, genericsTypeIndex));
+    }
+
+    public String getRmTypeName(@Nonnull Class<?> clazz) {
+        String typeName = typeNamesByClass.get(clazz);
+        return typeName == null ? typeNamesByClass.computeIfAbsent(clazz, Utils::getRmTypeName) : typeName;
+    }
+
+    public Collection<Class<?>> getRmClasses() {
+        return classesByTypeName.values();
+    }
+
+    /**
+     * Checks if RM class is concrete and not extended by any other RM class, which means that its RM type can be inferred
+     * from the declared type alone.
+     *
+     * @param clazz class
+     * @return true if no other RM type can be used where this class is declared
+     */
+    public boolean isFinalRmClass(@Nonnull Class<?> clazz) {
+        return finalRmClasses.contains(clazz);
+    }
+
+    private static Map<String, Class<?>> scanRmClasses(ClassLoader classLoader) {
+        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false) {
+            @Override
+            protected boolean isCandidateComponent(AnnotatedBeanDefinition beanDefinition) {
+                return beanDefinition.getMetadata().isIndependent() && !beanDefinition.getMetadata().isInterface();
+            }
+        };
+        scanner.setResourceLoader(new DefaultResourceLoader(classLoader));
+        scanner.addIncludeFilter((metadataReader, metadataReaderFactory) -> true);
+
+        Map<String, Class<?>> classes = new LinkedHashMap<>();
+        scanner.findCandidateComponents(RM_PACKAGE_NAME).stream()
+                .map(BeanDefinition::getBeanClassName)
+                .sorted(Comparator.comparingInt(RmTypeRegistry::getPackagePriority).thenComparing(Comparator.naturalOrder()))
+                .forEach(className -> {
+                    try {
+                        Class<?> clazz = ClassUtils.forName(className, classLoader);
+                        classes.putIfAbsent(Utils.getRmTypeName(clazz), clazz);
+                    } catch (ClassNotFoundException | LinkageError ignored) {
+                    }
+                });
+        return classes;
+    }
+
+    private static int getPackagePriority(String className) {
+        int index = PREFERRED_PACKAGE_NAMES.indexOf(ClassUtils.getPackageName(className));
+        return index == -1 ? PREFERRED_PACKAGE_NAMES.size() : index;
+    }
+}
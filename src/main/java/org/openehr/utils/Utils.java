@@ -2,51 +2,28 @@ package org.openehr.utils;
 
 import com.google.common.base.CaseFormat;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.ImmutableSet;
 import com.nedap.archie.rm.RMObject;
-import com.nedap.archie.rm.composition.Composition;
 import com.nedap.archie.rm.datatypes.CodePhrase;
 import com.nedap.archie.rm.datavalues.DvCodedText;
 import com.nedap.archie.rm.datavalues.DvText;
-import com.nedap.archie.rm.ehr.Ehr;
 import com.nedap.archie.rm.generic.PartyIdentified;
 import com.nedap.archie.rm.support.identification.TerminologyId;
 import org.apache.commons.lang3.StringUtils;
 
 import javax.annotation.Nonnull;
-import java.util.Optional;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 
 /**
  * @author Dusan Markovic
  */
 public class Utils {
-    private static final ConcurrentMap<String, Class<RMObject>> CLASS_MAP = new ConcurrentHashMap<>();
-    private static final Set<String> RM_PACKAGE_NAMES = ImmutableSet.of(
-            Composition.class.getPackage().getName(),
-            Ehr.class.getPackage().getName());
-
-    public static Class<? extends RMObject> getRmClass(@Nonnull String rmTypeName) throws ClassNotFoundException {
-        int genericsTypeIndex = rmTypeName.indexOf('<');
-        String name = genericsTypeIndex == -1 ? rmTypeName : rmTypeName.substring(0, genericsTypeIndex);
-        if (!CLASS_MAP.containsKey(name)) {
-            Class<RMObject> clazz = findRmClass(name).orElseThrow(() -> new ClassNotFoundException(rmTypeName));
-            CLASS_MAP.put(name, clazz);
-        }
-        return CLASS_MAP.get(name);
-    }
 
     @SuppressWarnings("unchecked")
-    private static Optional<Class<RMObject>> findRmClass(String className) {
-        for (String packageName : RM_PACKAGE_NAMES) {
-            try {
-                return Optional.of((Class<RMObject>)Class.forName(packageName + '.' + CaseFormat.UPPER_UNDERSCORE.to(CaseFormat.UPPER_CAMEL, className)));
-            } catch (ClassNotFoundException ignored) {
-            }
+    public static Class<? extends RMObject> getRmClass(@Nonnull String rmTypeName) throws ClassNotFoundException {
+        Class<?> rmClass = RmTypeRegistry.getInstance().getRmClass(rmTypeName);
+        if (rmClass == null) {
+            throw new ClassNotFoundException(rmTypeName);
         }
-        return Optional.empty();
+        return (Class<? extends RMObject>)rmClass;
     }
 
     public static DvText getText(String value) {
@@ -21,14 +21,16 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.node.TextNode;
 import com.nedap.archie.rm.support.identification.ObjectRef;
 import com.nedap.archie.rm.support.identification.ObjectVersionId;
-import org.apache.commons.io.IOUtils;
 import org.joda.time.format.DateTimeFormatter;
 import org.joda.time.format.ISODateTimeFormat;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.parallel.ResourceAccessMode;
+import org.junit.jupiter.api.parallel.ResourceLock;
 import org.openehr.data.OpenEhrViewRequest;
 import org.openehr.data.OpenEhrViewResponse;
 import org.openehr.rest.conf.WebClientConfiguration;
+import org.openehr.rest.template.OpenEhrTemplateUploader;
 import org.openehr.utils.LocatableUid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -53,13 +55,23 @@ import java.net.URISyntaxException;
 import java.net.URLDecoder;
 import java.net.UnknownHostException;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Function;
+import java.util.function.IntFunction;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.openehr.utils.OpenEhrConstants.POST_COMPOSITION_PATH;
@@ -71,12 +83,23 @@ import static org.springframework.http.HttpStatus.*;
 import static org.springframework.http.MediaType.*;
 
 /**
+ * Base of the REST test classes. Every class takes its own EHR in {@link #setUp()} and only reads the state other
+ * classes share (templates, uploaded once per run by {@link OpenEhrTestFixtures}), so classes can run in parallel, see
+ * {@code junit-platform.properties}. Methods of a class run one after another.
+ *
  * @author Dusan Markovic
  */
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
 @ContextConfiguration(classes = WebClientConfiguration.class)
+@ResourceLock(value = AbstractRestTest.SERVER_RESOURCE, mode = ResourceAccessMode.READ)
 public class AbstractRestTest {
     public static final DateTimeFormatter DATE_TIME_FORMATTER = ISODateTimeFormat.dateTime().withZoneUTC();
+    /**
+     * Shared by all test classes, a class that needs the server to itself (e.g. a load test) locks it for writing.
+     */
+    public static final String SERVER_RESOURCE = "openehr.rest.server";
+    private static final Duration SERVER_TIME_TIMEOUT = Duration.ofSeconds(10L);
+    private static final Duration SERVER_TIME_POLL_INTERVAL = Duration.ofMillis(50L);
     private static final Pattern HEADER_ETAG_PATTERN = Pattern.compile("W/\"|\"");
 
     @Autowired
@@ -86,6 +109,15 @@ public class AbstractRestTest {
     @Qualifier("restTemplate")
     protected RestTemplate restTemplate;
 
+    @Autowired
+    protected ExecutorService clientExecutorService;
+
+    @Autowired
+    protected OpenEhrTemplateUploader templateUploader;
+
+    @Autowired
+    protected OpenEhrTestFixtures fixtures;
+
     @Value("${openehr.rest.uri}")
     protected URI uri;
 
@@ -101,20 +133,12 @@ public class AbstractRestTest {
     public void setUp() throws IOException {
         targetPath = uri.toURL().toString();
         nonExistingUid = UUID.randomUUID() + "::domain3::1";
-        HttpHeaders headers = fullRepresentationHeaders();
-        ResponseEntity<JsonNode> ehrResponseEntity = exchange(getTargetPath() + "/ehr", POST, null, JsonNode.class, headers);
-        ehrId = getFieldValue(Objects.requireNonNull(ehrResponseEntity.getBody()), "ehr_id");
+        ehrId = fixtures.takeEhr();
 
         uploadTemplate("/rest/Demo Vitals.opt");
-        composition = objectMapper.readValue(IOUtils.toString(
-                OpenEhrCompositionRestTest.class.getResourceAsStream("/rest/composition.json"),
-                StandardCharsets.UTF_8).replace("{{REPLACE_THIS}}", "Jane Nurse"), JsonNode.class);
-        assertThat(composition).isNotNull();
+        composition = fixtures.getJson("/rest/composition.json", "Jane Nurse");
         compositionUid = postComposition(ehrId, composition);
-        String jsonCompositionWithPlaceholder = IOUtils.toString(
-                OpenEhrCompositionRestTest.class.getResourceAsStream("/rest/AtemfrequenzTemplate-composition.json"),
-                StandardCharsets.UTF_8);
-        unProcessableComposition = objectMapper.readValue(jsonCompositionWithPlaceholder.replace("{{REPLACE_THIS}}", "John Nurse"), JsonNode.class);
+        unProcessableComposition = fixtures.getJson("/rest/AtemfrequenzTemplate-composition.json", "John Nurse");
         setTextNodeValue(unProcessableComposition, "archetype_node_id", "openEHR-EHR-COMPOSITION.report.sv2");
     }
 
@@ -122,6 +146,17 @@ public class AbstractRestTest {
         return targetPath;
     }
 
+    /**
+     * Runs {@code count} calls of {@code task} on {@link #clientExecutorService} (virtual threads when enabled) and waits
+     * for all of them.
+     */
+    protected <R> List<R> invokeConcurrently(int count, IntFunction<R> task) {
+        List<CompletableFuture<R>> futures = IntStream.range(0, count)
+                .mapToObj(i -> CompletableFuture.supplyAsync(() -> task.apply(i), clientExecutorService))
+                .collect(Collectors.toList());
+        return futures.stream().map(CompletableFuture::join).collect(Collectors.toList());
+    }
+
     protected <R> R get(String url, Class<R> responseType) {
         return getResponse(url, responseType).getBody();
     }
@@ -458,23 +493,42 @@ public class AbstractRestTest {
         return String.valueOf(random.nextInt());
     }
 
-    protected void uploadTemplate(String templatePath) throws IOException {
-        String templateString = IOUtils.toString(
-                OpenEhrCompositionRestTest.class.getResourceAsStream(templatePath),
-                StandardCharsets.UTF_8);
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(APPLICATION_XML);
-        headers.setAccept(Collections.singletonList(APPLICATION_XML));
-        try {
-            ResponseEntity<String> templateResponseEntity = exchange(
-                    getTargetPath() + "/definition/template/adl1.4", POST, templateString, String.class, headers);
-        } catch (HttpClientErrorException e) {
-            if (e.getRawStatusCode() != 409) {
-                throw e;
+    /**
+     * Returns the server's commit time of a version, {@code commit_audit/time_committed} of the {@code ORIGINAL_VERSION}
+     * at {@code versionPath}.
+     */
+    protected Instant getCommitTime(String versionPath, Object... uriVariables) {
+        JsonNode version = Objects.requireNonNull(getResponse(getTargetPath() + versionPath, JsonNode.class, uriVariables).getBody());
+        return VersionTimes.parseCommitTime(version.get("commit_audit").get("time_committed").get("value").asText());
+    }
+
+    /**
+     * Waits until the server clock (the {@code Date} header) is past the second of {@code lastModified}, so that the next
+     * commit gets a later {@code Last-Modified}. Only needed where the exact commit time cannot be read. The next second
+     * starts at the latest a second after the commit response was received at {@code committedNanos}
+     * ({@link System#nanoTime()}), the server is polled at most every {@code SERVER_TIME_POLL_INTERVAL} until then.
+     */
+    protected void awaitServerTimeAfter(Instant lastModified, long committedNanos) {
+        long nextSecond = committedNanos + TimeUnit.SECONDS.toNanos(1L);
+        long deadline = nextSecond + SERVER_TIME_TIMEOUT.toNanos();
+        long pollIntervalNanos = SERVER_TIME_POLL_INTERVAL.toNanos();
+        while (true) {
+            long date = getResponse(getTargetPath() + "/ehr/{ehr_id}", JsonNode.class, ehrId).getHeaders().getDate();
+            assertThat(date).as("Date header").isNotNegative();
+            if (date > lastModified.toEpochMilli()) {
+                return;
             }
+            long now = System.nanoTime();
+            assertThat(now - deadline).as("server time after %s", lastModified).isNegative();
+            long untilNextSecond = nextSecond - now;
+            LockSupport.parkNanos(untilNextSecond > 0L ? Math.min(untilNextSecond, pollIntervalNanos) : pollIntervalNanos);
         }
     }
 
+    protected void uploadTemplate(String templatePath) {
+        fixtures.uploadTemplate(templatePath);
+    }
+
     protected void uploadNamedQuery(String description, String name, String query) {
         OpenEhrViewRequest request = new OpenEhrViewRequest();
         request.setDescription(description);
@@ -15,13 +15,15 @@
 package org.openehr.rest;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import org.apache.commons.io.IOUtils;
+import com.nedap.archie.rm.composition.Composition;
 import org.joda.time.DateTime;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.openehr.data.OpenEhrErrorResponse;
 import org.openehr.rest.conf.WebClientConfiguration;
+import org.openehr.rest.json.OpenEhrObjectMapper;
+import org.openehr.rest.template.OpenEhrCompositionGenerator;
 import org.openehr.utils.LocatableUid;
 import org.openehr.utils.OpenEhrConstants;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
@@ -35,7 +37,9 @@ import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.web.client.HttpStatusCodeException;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.Arrays;
 import java.util.Objects;
 import java.util.UUID;
 
@@ -57,27 +61,21 @@ public class OpenEhrCompositionRestTest extends AbstractRestTest {
 
     private String compositionUpdated;
     private String compositionWrongType;
-    private DateTime before;
 
     @BeforeAll
     @Override
     public void setUp() throws IOException {
         super.setUp();
 
-        String jsonCompositionWithPlaceholder = IOUtils.toString(
-                OpenEhrCompositionRestTest.class.getResourceAsStream("/rest/AtemfrequenzTemplate-composition.json"),
-                StandardCharsets.UTF_8);
-        compositionUpdated = jsonCompositionWithPlaceholder.replace("{{REPLACE_THIS}}", "John Nurse");
-        compositionWrongType = IOUtils.toString(
-                OpenEhrCompositionRestTest.class.getResourceAsStream("/rest/AtemfrequenzTemplate-composition-wrong-type.json"),
-                StandardCharsets.UTF_8);
+        String jsonCompositionWithPlaceholder = fixtures.getResource("/rest/AtemfrequenzTemplate-composition.json");
+        compositionUpdated = jsonCompositionWithPlaceholder.replace(OpenEhrTestFixtures.PLACEHOLDER, "John Nurse");
+        compositionWrongType = fixtures.getResource("/rest/AtemfrequenzTemplate-composition-wrong-type.json");
 
         uploadTemplate("/rest/AtemfrequenzTemplate.opt");
         uploadTemplate("/rest/MedikationLoop.opt");
 
-        String anotherComposition = jsonCompositionWithPlaceholder.replace("{{REPLACE_THIS}}", "Just Someone");
+        String anotherComposition = jsonCompositionWithPlaceholder.replace(OpenEhrTestFixtures.PLACEHOLDER, "Just Someone");
         compositionUid2 = postComposition(ehrId, anotherComposition);
-        before = DateTime.now();
     }
 
     @Test
@@ -113,6 +111,35 @@ public class OpenEhrCompositionRestTest extends AbstractRestTest {
         assertThat(body).contains("Could not resolve type");
     }
 
+    @Test
+    public void createGeneratedCompositions() throws IOException {
+        for (String templatePath : Arrays.asList("/rest/Demo Vitals.opt", "/rest/MedikationLoop.opt", "/rest/AtemfrequenzTemplate.opt")) {
+            OpenEhrCompositionGenerator generator;
+            try (InputStream inputStream = OpenEhrCompositionRestTest.class.getResourceAsStream(templatePath)) {
+                generator = new OpenEhrCompositionGenerator(inputStream).seed(1L).repetitions(3);
+            }
+            assertThat(generator.generate(2L)).isEqualTo(generator.generate(2L));
+            generator.stream(3L).forEach(generated -> assertThat(postComposition(ehrId, generated)).as(templatePath).isNotNull());
+        }
+    }
+
+    @Test
+    public void deserializeWithPrewarmedObjectMapperCopy() throws IOException {
+        assertThat(objectMapper).isInstanceOfSatisfying(OpenEhrObjectMapper.class, mapper -> assertThat(mapper.isPrewarmed()).isTrue());
+        OpenEhrObjectMapper copy = (OpenEhrObjectMapper)objectMapper.copy();
+        assertThat(copy.isPrewarmed()).isFalse();
+        copy.prewarm();
+        assertThat(copy.isPrewarmed()).isTrue();
+
+        for (String path : Arrays.asList(
+                "/rest/composition.json", "/rest/composition2.json", "/rest/AtemfrequenzTemplate-composition.json", "/rest/MedikationLoop.json")) {
+            JsonNode json = fixtures.getJson(path, "Prewarmed Copy");
+            Composition composition = copy.treeToValue(json, Composition.class);
+            assertThat(composition.getName().getValue()).as(path).isEqualTo(json.get("name").get("value").asText());
+            assertThat(composition.getContent()).as(path).isNotEmpty();
+        }
+    }
+
     @Test
     public void createCompositionValidationErrors() {
         HttpHeaders headers = fullRepresentationHeaders();
@@ -321,7 +348,6 @@ public class OpenEhrCompositionRestTest extends AbstractRestTest {
         ResponseEntity<JsonNode> response = exchange(
                 getTargetPath() + POST_COMPOSITION_PATH, POST, composition, JsonNode.class, headers, ehrId);
         assertThat(response.getStatusCode()).isEqualTo(CREATED);
-        DateTime before = DateTime.now();
 
         JsonNode body = response.getBody();
         assertThat(body).isNotNull();
@@ -344,12 +370,15 @@ public class OpenEhrCompositionRestTest extends AbstractRestTest {
         assertThat(body1.get("composer").get("name").asText()).isEqualTo("John Nurse");
         LocatableUid locatableUid = new LocatableUid(uid);
 
+        // server commit times, so neither the client clock nor waiting matters
+        Instant before = getCommitTime(GET_COMPOSITION_VERSION_PATH, ehrId, compositionUid, versionUid);
+        Instant after = getCommitTime(GET_COMPOSITION_VERSION_PATH, ehrId, compositionUid, uid);
         ResponseEntity<JsonNode> response2 = getResponse(
                 getTargetPath() + "/ehr/{ehr_id}/composition/{versioned_object_uid}?version_at_time={version_at_time}",
                 JsonNode.class,
                 ehrId,
                 locatableUid.getUid(),
-                DATE_TIME_FORMATTER.print(before));
+                VersionTimes.versionAtTime(before));
         assertThat(response2.getStatusCode()).isEqualTo(OK);
         validateLocationAndETag(response2, false, false);
         JsonNode body2 = response2.getBody();
@@ -363,7 +392,7 @@ public class OpenEhrCompositionRestTest extends AbstractRestTest {
                 JsonNode.class,
                 ehrId,
                 locatableUid.getUid(),
-                DATE_TIME_FORMATTER.print(DateTime.now()));
+                VersionTimes.versionAtTime(after));
         assertThat(response3.getStatusCode()).isEqualTo(OK);
         validateLocationAndETag(response3, false, false);
         JsonNode body3 = response3.getBody();
@@ -375,18 +404,20 @@ public class OpenEhrCompositionRestTest extends AbstractRestTest {
 
     @Test
     public void retrieveCompositionByVersionAtTime204() {
+        String deletedUid = postComposition(ehrId, compositionUpdated);
         ResponseEntity<String> response1 = exchange(
-                getTargetPath() + GET_COMPOSITION_PATH, DELETE, null, String.class, null, ehrId, compositionUid2);
+                getTargetPath() + GET_COMPOSITION_PATH, DELETE, null, String.class, null, ehrId, deletedUid);
         assertThat(response1.getStatusCode()).isEqualTo(NO_CONTENT);
         validateLocationAndETag(response1);
-        LocatableUid locatableUid = new LocatableUid(compositionUid2);
+        LocatableUid locatableUid = new LocatableUid(deletedUid);
+        Instant deleted = getCommitTime(GET_COMPOSITION_VERSION_PATH, ehrId, locatableUid.getUid(), locatableUid.next().toString());
         // 204 get deleted composition
         ResponseEntity<JsonNode> response = getResponse(
                 getTargetPath() + "/ehr/{ehr_id}/composition/{versioned_object_uid}?version_at_time={version_at_time}",
                 JsonNode.class,
                 ehrId,
                 locatableUid.getUid(),
-                DATE_TIME_FORMATTER.print(DateTime.now()));
+                VersionTimes.versionAtTime(deleted));
         assertThat(response.getStatusCode()).isEqualTo(NO_CONTENT);
         validateLocationAndETag(response, false, false);
     }
@@ -562,20 +593,24 @@ public class OpenEhrCompositionRestTest extends AbstractRestTest {
     }
 
     @Test
-    public void retrieveCompositionVersionAtTime() throws InterruptedException {
-        LocatableUid locatableUid = new LocatableUid(compositionUid2);
-        Thread.sleep(100);
+    public void retrieveCompositionVersionAtTime() {
+        String deletedUid = postComposition(ehrId, compositionUpdated);
+        LocatableUid locatableUid = new LocatableUid(deletedUid);
         ResponseEntity<String> response1 = exchange(
-                getTargetPath() + GET_COMPOSITION_PATH, DELETE, null, String.class, null, ehrId, compositionUid2);
+                getTargetPath() + GET_COMPOSITION_PATH, DELETE, null, String.class, null, ehrId, deletedUid);
         assertThat(response1.getStatusCode()).isEqualTo(NO_CONTENT);
         validateLocationAndETag(response1);
 
+        // server commit times, so neither the client clock nor waiting matters
+        Instant created = getCommitTime(GET_COMPOSITION_VERSION_PATH, ehrId, locatableUid.getUid(), deletedUid);
+        Instant deleted = getCommitTime(GET_COMPOSITION_VERSION_PATH, ehrId, locatableUid.getUid(), locatableUid.next().toString());
+
         ResponseEntity<JsonNode> response = getResponse(
                 getTargetPath() + GET_VERSIONED_COMPOSITION_PATH + "?version_at_time={version_at_time}",
                 JsonNode.class,
                 ehrId,
                 locatableUid.getUid(),
-                DATE_TIME_FORMATTER.print(before));
+                VersionTimes.versionAtTime(created));
         assertThat(response.getStatusCode()).isEqualTo(OK);
         validateLocationAndETag(response);
         JsonNode body = response.getBody();
@@ -583,20 +618,17 @@ public class OpenEhrCompositionRestTest extends AbstractRestTest {
         assertThat(body.get("data")).isNotNull();
         assertThat(body.get("lifecycle_state").get("value").asText()).isEqualTo("complete");
 
-        DateTime after = DateTime.now();
         ResponseEntity<JsonNode> response2 = getResponse(
                 getTargetPath() + GET_VERSIONED_COMPOSITION_PATH + "?version_at_time={version_at_time}",
                 JsonNode.class,
                 ehrId,
                 locatableUid.getUid(),
-                DATE_TIME_FORMATTER.print(after));
+                VersionTimes.versionAtTime(deleted));
         assertThat(response2.getStatusCode()).isEqualTo(OK);
         validateLocationAndETag(response2);
         JsonNode body1 = response2.getBody();
         assertThat(body1).isNotNull();
         assertThat(body1.has("data")).isFalse();
         assertThat(body1.get("lifecycle_state").get("value").asText()).isEqualTo("deleted");
-
-        compositionUid2 = postComposition(ehrId, compositionUpdated);
     }
 }
@@ -18,7 +18,6 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.BooleanNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import org.joda.time.DateTime;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.openehr.data.OpenEhrErrorResponse;
@@ -35,10 +34,15 @@ import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.web.client.HttpStatusCodeException;
 
 import java.io.IOException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Objects;
 import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.openehr.utils.OpenEhrConstants.GET_EHR_STATUS_VERSION_PATH;
 import static org.springframework.http.HttpHeaders.IF_MATCH;
 import static org.springframework.http.HttpMethod.POST;
 import static org.springframework.http.HttpMethod.PUT;
@@ -91,6 +95,16 @@ public class OpenEhrEhrRestTest extends AbstractRestTest {
         assertThat(httpException.getStatusCode()).isEqualTo(CONFLICT);
     }
 
+    @Test
+    public void createEhrConcurrently() {
+        List<String> ehrIds = invokeConcurrently(20, i -> {
+            ResponseEntity<JsonNode> response = exchange(getTargetPath() + "/ehr", POST, null, JsonNode.class, fullRepresentationHeaders());
+            assertThat(response.getStatusCode()).isEqualTo(CREATED);
+            return getFieldValue(Objects.requireNonNull(response.getBody()), "ehr_id");
+        });
+        assertThat(ehrIds).hasSize(20).doesNotHaveDuplicates();
+    }
+
     @Test
     public void createEhrWithProvidedEhrId() {
         HttpHeaders headers = fullRepresentationHeaders();
@@ -362,7 +376,6 @@ public class OpenEhrEhrRestTest extends AbstractRestTest {
         ResponseEntity<JsonNode> ehrResponse = createEhrWithProvidedUidAndStatus(null, headers, ehrUid);
         assertThat(ehrResponse.getStatusCode()).isEqualTo(CREATED);
 
-        DateTime before = DateTime.now();
         JsonNode testEhr = ehrResponse.getBody();
         JsonNode status = testEhr.get("ehr_status");
         assertThat(status).isNotNull();
@@ -376,23 +389,25 @@ public class OpenEhrEhrRestTest extends AbstractRestTest {
         assertThat(response1.getStatusCode()).isEqualTo(NO_CONTENT);
         validateLocationAndETag(response1);
 
+        // server commit times, so neither the client clock nor waiting matters
+        Instant before = getCommitTime(GET_EHR_STATUS_VERSION_PATH, ehrUid, versionUid);
+        Instant after = getCommitTime(GET_EHR_STATUS_VERSION_PATH, ehrUid, new LocatableUid(versionUid).next().toString());
         ResponseEntity<JsonNode> response2 = getResponse(
                 getTargetPath() + "/ehr/{ehr_id}/ehr_status?version_at_time={version_at_time}",
                 JsonNode.class,
                 ehrUid,
-                DATE_TIME_FORMATTER.print(before));
+                VersionTimes.versionAtTime(before));
         assertThat(response2.getStatusCode()).isEqualTo(OK);
         validateLocationAndETag(response2, false, false);
         JsonNode ehrStatus1 = response2.getBody();
         assertThat(ehrStatus1).isNotNull();
         assertThat(ehrStatus1.get("is_queryable").asBoolean()).isTrue();
 
-        DateTime after = DateTime.now();
         ResponseEntity<JsonNode> response3 = getResponse(
                 getTargetPath() + "/ehr/{ehr_id}/ehr_status?version_at_time={version_at_time}",
                 JsonNode.class,
                 ehrUid,
-                DATE_TIME_FORMATTER.print(after));
+                VersionTimes.versionAtTime(after));
         assertThat(response3.getStatusCode()).isEqualTo(OK);
         validateLocationAndETag(response3, false, false);
         JsonNode ehrStatus2 = response3.getBody();
@@ -411,7 +426,7 @@ public class OpenEhrEhrRestTest extends AbstractRestTest {
         validateLocationAndETag(httpException, false, false);
         assertThat(httpException.getResponseBodyAsString()).isEmpty();
 
-        String future = DATE_TIME_FORMATTER.print(before.minusYears(1));
+        String future = VersionTimes.versionAtTime(before.minus(365L, ChronoUnit.DAYS));
         HttpStatusCodeException httpException1 = assertThrows(
                 HttpStatusCodeException.class,
                 () -> getResponse(
@@ -429,7 +444,7 @@ public class OpenEhrEhrRestTest extends AbstractRestTest {
                         getTargetPath() + "/ehr/{ehr_id}/ehr_status?version_at_time={version_at_time}",
                         String.class,
                         ehrUid + "404",
-                        DATE_TIME_FORMATTER.print(after)));
+                        VersionTimes.versionAtTime(after)));
         assertThat(httpException2.getStatusCode()).isEqualTo(NOT_FOUND);
 
         validateLocationAndETag(httpException2, false, false);
@@ -623,10 +638,7 @@ public class OpenEhrEhrRestTest extends AbstractRestTest {
     }
 
     @Test
-    public void retrieveEhrStatusVersionAtTime() throws InterruptedException {
-        DateTime before = DateTime.now();
-        Thread.sleep(100);
-
+    public void retrieveEhrStatusVersionAtTime() {
         ResponseEntity<JsonNode> response1 = getResponse(getTargetPath() + "/ehr/{ehr_id}/ehr_status?version_at_time={version_at_time}",
                                                          JsonNode.class,
                                                          ehrId,
@@ -637,6 +649,8 @@ public class OpenEhrEhrRestTest extends AbstractRestTest {
         String versionUid = getUid(status);
 
         LocatableUid oldLocatableUid = new LocatableUid(versionUid);
+        // server commit time, so neither the client clock nor waiting matters
+        Instant before = getCommitTime(GET_EHR_STATUS_VERSION_PATH, ehrId, versionUid);
         ((ObjectNode)status).set("uid", null);
 
         HttpHeaders headers1 = new HttpHeaders();
@@ -649,7 +663,7 @@ public class OpenEhrEhrRestTest extends AbstractRestTest {
                 getTargetPath() + "/ehr/{ehr_id}/versioned_ehr_status/version?version_at_time={version_at_time}",
                 JsonNode.class,
                 ehrId,
-                DATE_TIME_FORMATTER.print(before));
+                VersionTimes.versionAtTime(before));
         assertThat(response3.getStatusCode()).isEqualTo(OK);
         validateLocationAndETag(response3);
         JsonNode body1 = response3.getBody();
@@ -661,7 +675,8 @@ public class OpenEhrEhrRestTest extends AbstractRestTest {
                 getTargetPath() + "/ehr/{ehr_id}/versioned_ehr_status/version?version_at_time={version_at_time}",
                 JsonNode.class,
                 ehrId,
-                DATE_TIME_FORMATTER.print(DateTime.now()));
+                VersionTimes.versionAtTime(
+                        getCommitTime(GET_EHR_STATUS_VERSION_PATH, ehrId, oldLocatableUid.next().toString())));
         assertThat(response4.getStatusCode()).isEqualTo(OK);
         validateLocationAndETag(response4);
         JsonNode body2 = response4.getBody();
@@ -18,7 +18,6 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.node.TextNode;
-import org.joda.time.DateTime;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -36,6 +35,8 @@ import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.web.client.HttpStatusCodeException;
 
 import java.io.IOException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -274,18 +275,20 @@ public class OpenEhrFolderRestTest extends AbstractRestTest {
     }
 
     @Test
-    public void retrieveFolderByTimestamp() throws InterruptedException, JsonProcessingException {
-        DateTime atTheBeginning = DateTime.now();
-
+    public void retrieveFolderByTimestamp() throws JsonProcessingException {
         HttpHeaders headers = fullRepresentationHeaders();
         String subFolderName = "subFolder";
         String mainFolderName = "MainFolder";
         JsonNode inputFolder = createFolderWithSubfolder(subFolderName, mainFolderName);
         ResponseEntity<JsonNode> response = exchange(getTargetPath() + "/ehr/{ehr_id}/directory", POST, inputFolder, JsonNode.class, headers, ehrId);
+        long committedNanos = System.nanoTime();
         JsonNode requestFolder = response.getBody();
         assertThat(requestFolder).isNotNull();
-        DateTime before = DateTime.now();
-        Thread.sleep(100);
+        // neither a version endpoint with the commit audit nor the contribution can be read for a folder, Last-Modified is
+        // the commit time truncated to seconds; the update has to land in a later second for a version_at_time between the
+        // two versions to exist
+        Instant created = VersionTimes.getLastModified(response.getHeaders());
+        awaitServerTimeAfter(created, committedNanos);
 
         String uid = getUid(requestFolder);
 
@@ -304,13 +307,16 @@ public class OpenEhrFolderRestTest extends AbstractRestTest {
         LocatableUid precedingUid = new LocatableUid(uid);
         validateLocationHeader("FOLDER", response1.getHeaders().getLocation(), precedingUid.next().toString(), this::getUid);
         uid = getHeaderETag(response1);
+        Instant updated = VersionTimes.getLastModified(response1.getHeaders());
+        String atTheBeginning = VersionTimes.versionAtTime(created.minusMillis(1L));
+        String before = VersionTimes.versionAtTime(updated.minusMillis(1L));
 
         // retrieve before change
         ResponseEntity<JsonNode> response2 = getResponse(
                 getTargetPath() + "/ehr/{ehr_id}/directory?version_at_time={version_at_time}",
                 JsonNode.class,
                 ehrId,
-                DATE_TIME_FORMATTER.print(before));
+                before);
         assertThat(response2.getStatusCode()).isEqualTo(OK);
         validateLocationAndETag(response2);
         JsonNode folder = response2.getBody();
@@ -321,12 +327,12 @@ public class OpenEhrFolderRestTest extends AbstractRestTest {
         validateLocationHeader("FOLDER", response2.getHeaders().getLocation(), oldName, jsonNode -> getFieldValue(jsonNode, "name"));
 
         // retrieve after change
-        DateTime after = DateTime.now();
+        String after = VersionTimes.versionAtTime(updated.plusMillis(999L));
         ResponseEntity<JsonNode> response3 = getResponse(
                 getTargetPath() + "/ehr/{ehr_id}/directory?version_at_time={version_at_time}",
                 JsonNode.class,
                 ehrId,
-                DATE_TIME_FORMATTER.print(after));
+                after);
         assertThat(response3.getStatusCode()).isEqualTo(OK);
         validateLocationAndETag(response3);
         folder = response3.getBody();
@@ -343,14 +349,14 @@ public class OpenEhrFolderRestTest extends AbstractRestTest {
                         getTargetPath() + "/ehr/{ehr_id}/directory?version_at_time={version_at_time}",
                         JsonNode.class,
                         "blablabla",
-                        DATE_TIME_FORMATTER.print(before)));
+                        before));
         assertThat(httpException.getStatusCode()).isEqualTo(NOT_FOUND);
 
         ResponseEntity<JsonNode> response4 = getResponse(
                 getTargetPath() + "/ehr/{ehr_id}/directory?version_at_time={version_at_time}&path={path}",
                 JsonNode.class,
                 ehrId,
-                DATE_TIME_FORMATTER.print(before),
+                before,
                 subFolderName);
         assertThat(response4.getStatusCode()).isEqualTo(OK);
         validateLocationAndETag(response4);
@@ -364,7 +370,7 @@ public class OpenEhrFolderRestTest extends AbstractRestTest {
                         getTargetPath() + "/ehr/{ehr_id}/directory?version_at_time={version_at_time}&path={path}",
                         String.class,
                         ehrId,
-                        DATE_TIME_FORMATTER.print(before),
+                        before,
                         "someNonexistantFolderName"));
         assertThat(httpException1.getStatusCode()).isEqualTo(NOT_FOUND);
 
@@ -374,7 +380,7 @@ public class OpenEhrFolderRestTest extends AbstractRestTest {
                         getTargetPath() + "/ehr/{ehr_id}/directory?version_at_time={version_at_time}&path={path}",
                         String.class,
                         ehrId,
-                        DATE_TIME_FORMATTER.print(before.minusDays(1)),
+                        VersionTimes.versionAtTime(created.minus(1L, ChronoUnit.DAYS)),
                         subFolderName));
         assertThat(httpException2.getStatusCode()).isEqualTo(NOT_FOUND);
 
@@ -399,7 +405,7 @@ public class OpenEhrFolderRestTest extends AbstractRestTest {
                 () -> getResponse(getTargetPath() + "/ehr/{ehr_id}/directory?version_at_time={version_at_time}",
                                   String.class,
                                   ehrId,
-                                  DATE_TIME_FORMATTER.print(atTheBeginning)));
+                                  atTheBeginning));
         assertThat(httpException3.getStatusCode()).isEqualTo(NOT_FOUND);
     }
 }
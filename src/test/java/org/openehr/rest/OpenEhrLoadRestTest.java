@@ -0,0 +1,182 @@
+/*
+ * Copyright 2020-2021 Better Ltd (www.better.care)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.openehr.rest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.parallel.ResourceAccessMode;
+import org.junit.jupiter.api.parallel.ResourceLock;
+import org.openehr.rest.conf.WebClientConfiguration;
+import org.openehr.rest.load.LoadScenario;
+import org.openehr.rest.load.LoadTestReport;
+import org.openehr.rest.load.LoadTestRunner;
+import org.openehr.rest.template.OpenEhrCompositionGenerator;
+import org.openehr.utils.LocatableUid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.security.servlet.SecurityAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.EnabledIf;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.openehr.utils.OpenEhrConstants.GET_COMPOSITION_PATH;
+import static org.springframework.http.HttpHeaders.IF_MATCH;
+import static org.springframework.http.HttpMethod.POST;
+import static org.springframework.http.HttpMethod.PUT;
+import static org.springframework.http.HttpStatus.CREATED;
+import static org.springframework.http.HttpStatus.OK;
+
+/**
+ * Replays the basic flows (create EHR, post, update and query compositions) as weighted scenarios against the server.
+ * Only runs with {@code openehr.load.enabled=true}, see README for the other {@code openehr.load.*} settings. It locks
+ * the server, so no other test class runs at the same time.
+ *
+ * @author Dusan Markovic
+ */
+@ExtendWith(SpringExtension.class)
+@EnableAutoConfiguration(exclude = {SecurityAutoConfiguration.class, DataSourceAutoConfiguration.class})
+@TestPropertySource(value = "classpath:application-test.properties")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, classes = {WebClientConfiguration.class})
+@EnabledIf(expression = "${openehr.load.enabled:false}", loadContext = true)
+@ResourceLock(value = AbstractRestTest.SERVER_RESOURCE, mode = ResourceAccessMode.READ_WRITE)
+public class OpenEhrLoadRestTest extends AbstractRestTest {
+    private static final Logger LOG = LoggerFactory.getLogger(OpenEhrLoadRestTest.class);
+    private static final int EHR_POOL_SIZE = 128;
+    private static final int COMPOSITION_VERSION_CAPACITY = 1024;
+
+    @Value("${openehr.load.concurrency:8}")
+    private int concurrency;
+    @Value("${openehr.load.rps:0}")
+    private double targetRps;
+    @Value("${openehr.load.duration-seconds:60}")
+    private long durationSeconds;
+    @Value("${openehr.load.warmup-seconds:10}")
+    private long warmupSeconds;
+    @Value("${openehr.rest.virtual-threads:false}")
+    private boolean virtualThreads;
+    @Value("${openehr.load.weight.create-ehr:1}")
+    private int createEhrWeight;
+    @Value("${openehr.load.weight.post-composition:4}")
+    private int postCompositionWeight;
+    @Value("${openehr.load.weight.update-composition:2}")
+    private int updateCompositionWeight;
+    @Value("${openehr.load.weight.query:3}")
+    private int queryWeight;
+    @Value("${openehr.load.generated-compositions:false}")
+    private boolean generatedCompositions;
+    @Value("${openehr.load.generator.repetitions:1}")
+    private int generatorRepetitions;
+    @Value("${openehr.load.generator.seed:0}")
+    private long generatorSeed;
+
+    private final AtomicReferenceArray<String> ehrIds = new AtomicReferenceArray<>(EHR_POOL_SIZE);
+    // versions to update, new ones are dropped when full
+    private final BlockingQueue<String[]> compositionVersions = new ArrayBlockingQueue<>(COMPOSITION_VERSION_CAPACITY);
+    private Supplier<? extends JsonNode> compositions;
+
+    @Override
+    @BeforeAll
+    public void setUp() throws IOException {
+        super.setUp();
+        for (int i = 0; i < EHR_POOL_SIZE; i++) {
+            ehrIds.set(i, ehrId);
+        }
+        if (generatedCompositions) {
+            try (InputStream inputStream = OpenEhrLoadRestTest.class.getResourceAsStream("/rest/Demo Vitals.opt")) {
+                compositions = new OpenEhrCompositionGenerator(inputStream)
+                        .seed(generatorSeed)
+                        .repetitions(generatorRepetitions)
+                        .supplier();
+            }
+        } else {
+            compositions = () -> composition;
+        }
+    }
+
+    @Test
+    public void load() throws InterruptedException {
+        LoadTestReport report = new LoadTestRunner(Arrays.asList(
+                new LoadScenario("create EHR", createEhrWeight, this::createEhr),
+                new LoadScenario("post composition", postCompositionWeight, this::postComposition),
+                new LoadScenario("update composition", updateCompositionWeight, this::updateComposition),
+                new LoadScenario("query AQL", queryWeight, this::query)))
+                .concurrency(concurrency)
+                .targetRps(targetRps)
+                .duration(Duration.ofSeconds(durationSeconds))
+                .warmup(Duration.ofSeconds(warmupSeconds))
+                .virtualThreads(virtualThreads)
+                .run();
+
+        LOG.info("Load test report:\n{}", report);
+        assertThat(report.getScenarioResults()).anySatisfy(result -> assertThat(result.getCount()).isPositive());
+    }
+
+    private void createEhr() {
+        ResponseEntity<JsonNode> response = exchange(getTargetPath() + "/ehr", POST, null, JsonNode.class, fullRepresentationHeaders());
+        assertThat(response.getStatusCode()).isEqualTo(CREATED);
+        ehrIds.set(ThreadLocalRandom.current().nextInt(EHR_POOL_SIZE), getFieldValue(Objects.requireNonNull(response.getBody()), "ehr_id"));
+    }
+
+    private void postComposition() {
+        String compositionEhrId = randomEhrId();
+        compositionVersions.offer(new String[]{compositionEhrId, postComposition(compositionEhrId, compositions.get())});
+    }
+
+    private void updateComposition() {
+        String[] version = compositionVersions.poll();
+        if (version == null) {
+            // nothing posted yet, a post here would be reported as an update
+            LoadScenario.skip();
+            return;
+        }
+        HttpHeaders headers = fullRepresentationHeaders();
+        headers.set(IF_MATCH, version[1]);
+        ResponseEntity<JsonNode> response = exchange(
+                getTargetPath() + GET_COMPOSITION_PATH, PUT, compositions.get(), JsonNode.class, headers,
+                version[0], new LocatableUid(version[1]).getUid());
+        assertThat(response.getStatusCode()).isEqualTo(OK);
+        compositionVersions.offer(new String[]{version[0], getUid(Objects.requireNonNull(response.getBody()))});
+    }
+
+    private void query() {
+        String query = "SELECT c/uid/value FROM EHR e[ehr_id/value='" + randomEhrId() + "'] CONTAINS COMPOSITION c";
+        ResponseEntity<JsonNode> response = getResponse(getTargetPath() + "/query/aql?q={query}&fetch=10", JsonNode.class, query);
+        assertThat(response.getStatusCode()).isEqualTo(OK);
+    }
+
+    private String randomEhrId() {
+        return ehrIds.get(ThreadLocalRandom.current().nextInt(EHR_POOL_SIZE));
+    }
+}
@@ -19,36 +19,42 @@
 package org.openehr.rest;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import org.apache.commons.io.IOUtils;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.openehr.data.OpenEhrColumnarQueryResponse;
 import org.openehr.data.OpenEhrConformance;
 import org.openehr.data.OpenEhrQueryRequest;
 import org.openehr.data.OpenEhrQueryResponse;
 import org.openehr.data.OpenEhrViewRequest;
 import org.openehr.data.OpenEhrViewResponse;
 import org.openehr.rest.conf.WebClientConfiguration;
+import org.openehr.rest.json.OpenEhrQueryResponseReader;
+import org.openehr.rest.query.OpenEhrQueryPager;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
 import org.springframework.boot.autoconfigure.security.servlet.SecurityAutoConfiguration;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
 
 import javax.annotation.PreDestroy;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -68,6 +74,8 @@ public class OpenEhrQueryRestTest extends AbstractRestTest {
     protected String ehrId1;
     @Autowired
     private OpenEhrConformance conformance;
+    @Autowired
+    private WebClient webClient;
     private String query;
     private String namedParameterQuery;
     private String maxTempQuery;
@@ -112,9 +120,7 @@ public class OpenEhrQueryRestTest extends AbstractRestTest {
         ResponseEntity<JsonNode> ehrResponseEntity1 = exchange(getTargetPath() + "/ehr", POST, ehrStatus, JsonNode.class, fullRepresentationHeaders());
         ehrId1 = getFieldValue(Objects.requireNonNull(ehrResponseEntity1.getBody()), "ehr_id");
 
-        compositionUid2 = postComposition(ehrId, objectMapper.readValue(IOUtils.toString(
-                OpenEhrCompositionRestTest.class.getResourceAsStream("/rest/composition2.json"),
-                StandardCharsets.UTF_8), JsonNode.class));
+        compositionUid2 = postComposition(ehrId, fixtures.getJson("/rest/composition2.json"));
 
         query = "select o/data[at0002]/events[at0003 and name/value='Any event']/data[at0001]/items[at0004]/value/magnitude as temperature, " +
                 "o/data[at0002]/events[at0003 and name/value='Any event']/data[at0001]/items[at0004]/value/units as unit from EHR[" +
@@ -240,6 +246,82 @@ public class OpenEhrQueryRestTest extends AbstractRestTest {
         assertThat(body.getRows()).hasSizeGreaterThan(0);
     }
 
+    @Test
+    public void queryGetStreaming() {
+        List<List<Object>> rows = restTemplate.execute(
+                getTargetPath() + "/query/aql?q={query}",
+                GET,
+                request -> request.getHeaders().setAccept(Collections.singletonList(MediaType.APPLICATION_JSON)),
+                OpenEhrQueryResponseReader.responseExtractor(objectMapper, reader -> {
+                    assertThat(reader.getName()).isNull();
+                    assertThat(reader.getColumns()).hasSize(2);
+                    assertThat(reader.getColumns().get(0).getName()).isEqualTo("temperature");
+                    assertThat(reader.getColumns().get(1).getName()).isEqualTo("unit");
+                    return reader.setColumnType("temperature", Double.class)
+                            .setColumnType("unit", String.class)
+                            .rowStream()
+                            .collect(Collectors.toList());
+                }),
+                query);
+
+        assertThat(rows).hasSize(2);
+        assertThat(rows.get(0)).containsExactly(40.7d, "°C");
+        assertThat(rows.get(1)).containsExactly(37.2d, "°C");
+    }
+
+    @Test
+    public void queryGetColumnar() {
+        OpenEhrColumnarQueryResponse response = restTemplate.execute(
+                getTargetPath() + "/query/aql?q={query}",
+                GET,
+                request -> request.getHeaders().setAccept(Collections.singletonList(MediaType.APPLICATION_JSON)),
+                OpenEhrQueryResponseReader.responseExtractor(objectMapper, OpenEhrQueryResponseReader::readColumnar),
+                query);
+
+        assertThat(response).isNotNull();
+        assertThat(response.getRowCount()).isEqualTo(2);
+        OpenEhrColumnarQueryResponse.Column temperature = response.getColumn("temperature");
+        assertThat(temperature.getType()).isEqualTo(OpenEhrColumnarQueryResponse.ColumnType.DOUBLE);
+        assertThat(temperature.getColumnData().getPath()).isEqualTo("/data[at0002]/events[at0003]/data[at0001]/items[at0004]/value/magnitude");
+        assertThat(((OpenEhrColumnarQueryResponse.DoubleColumn)temperature).stream().toArray()).containsExactly(40.7d, 37.2d);
+        OpenEhrColumnarQueryResponse.Column unit = response.getColumn("unit");
+        assertThat(unit.getType()).isEqualTo(OpenEhrColumnarQueryResponse.ColumnType.STRING);
+        assertThat(((OpenEhrColumnarQueryResponse.StringColumn)unit).getDictionary()).containsExactly("°C");
+    }
+
+    @Test
+    public void queryPostPaged() {
+        OpenEhrQueryRequest request = new OpenEhrQueryRequest();
+        request.setQ(query);
+        try (OpenEhrQueryPager pager = new OpenEhrQueryPager(restTemplate, getTargetPath() + "/query/aql", 1, 2);
+             Stream<List<Object>> rows = pager.rows(request)) {
+            assertThat(rows.map(row -> row.get(0)).collect(Collectors.toList())).containsExactly(40.7d, 37.2d);
+
+            OpenEhrQueryRequest limitedRequest = new OpenEhrQueryRequest();
+            limitedRequest.setQ(maxTempQuery);
+            assertThrows(IllegalArgumentException.class, () -> pager.rows(limitedRequest));
+        }
+    }
+
+    @Test
+    public void queryGetReactive() {
+        List<OpenEhrQueryResponse> responses = Flux.range(0, 20)
+                .flatMap(i -> webClient.get()
+                        .uri("/query/aql?q={query}", query)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .retrieve()
+                        .bodyToMono(OpenEhrQueryResponse.class))
+                .collectList()
+                .block();
+
+        assertThat(responses).hasSize(20);
+        assertThat(responses).allSatisfy(body -> {
+            assertThat(body.getRows()).hasSize(2);
+            assertThat(body.getRows().get(0).get(0)).isEqualTo(40.7d);
+            assertThat(body.getRows().get(1).get(0)).isEqualTo(37.2d);
+        });
+    }
+
     @Test
     public void queryGetByEhrIdRequestParamAsQueryParam() {
         HttpHeaders httpHeaders = new HttpHeaders();
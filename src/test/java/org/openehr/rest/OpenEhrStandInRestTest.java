@@ -0,0 +1,205 @@
+/*
+ * Copyright 2020-2021 Better Ltd (www.better.care)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.openehr.rest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.openehr.data.OpenEhrQueryRequest;
+import org.openehr.data.OpenEhrQueryResponse;
+import org.openehr.data.OpenEhrTemplateDefinition;
+import org.openehr.data.OpenEhrViewRequest;
+import org.openehr.rest.conf.WebClientConfiguration;
+import org.openehr.rest.template.OpenEhrTemplateCache;
+import org.openehr.rest.template.OpenEhrTemplateUploader;
+import org.openehr.utils.LocatableUid;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.security.servlet.SecurityAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.web.client.HttpStatusCodeException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.openehr.utils.OpenEhrConstants.GET_COMPOSITION_PATH;
+import static org.openehr.utils.OpenEhrConstants.GET_COMPOSITION_VERSION_PATH;
+import static org.openehr.utils.OpenEhrConstants.POST_COMPOSITION_PATH;
+import static org.springframework.http.HttpHeaders.IF_MATCH;
+import static org.springframework.http.HttpMethod.*;
+import static org.springframework.http.HttpStatus.*;
+
+/**
+ * Runs EHR, composition, query and template round trips through the real client against the in-memory stand-in server,
+ * started by {@link org.openehr.rest.conf.StandInServerEnvironmentPostProcessor} whatever {@code openehr.rest.uri} is
+ * configured.
+ *
+ * @author Dusan Markovic
+ */
+@ExtendWith(SpringExtension.class)
+@EnableAutoConfiguration(exclude = {SecurityAutoConfiguration.class, DataSourceAutoConfiguration.class})
+@TestPropertySource(value = "classpath:application-test.properties", properties = "openehr.standin.enabled=true")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, classes = {WebClientConfiguration.class})
+public class OpenEhrStandInRestTest extends AbstractRestTest {
+
+    @Test
+    public void ehrRoundTrip() {
+        String subjectId = UUID.randomUUID().toString();
+        ResponseEntity<JsonNode> response = exchange(
+                getTargetPath() + "/ehr", POST, createEhrStatus(subjectId), JsonNode.class, fullRepresentationHeaders());
+        assertThat(response.getStatusCode()).isEqualTo(CREATED);
+        validateLocationAndETag(response);
+        String createdEhrId = getFieldValue(getBody(response), "ehr_id");
+
+        JsonNode ehr = getResponse(getTargetPath() + "/ehr/{ehr_id}", JsonNode.class, createdEhrId).getBody();
+        assertThat(ehr).isNotNull();
+        assertThat(getFieldValue(ehr, "ehr_id")).isEqualTo(createdEhrId);
+
+        JsonNode ehrBySubject = getResponse(
+                getTargetPath() + "/ehr?subject_id={subject_id}&subject_namespace={subject_namespace}",
+                JsonNode.class,
+                subjectId,
+                "standin").getBody();
+        assertThat(ehrBySubject).isNotNull();
+        assertThat(getFieldValue(ehrBySubject, "ehr_id")).isEqualTo(createdEhrId);
+
+        HttpStatusCodeException exception = assertThrows(
+                HttpStatusCodeException.class,
+                () -> exchange(getTargetPath() + "/ehr", POST, createEhrStatus(subjectId), JsonNode.class, fullRepresentationHeaders()));
+        assertThat(exception.getStatusCode()).isEqualTo(CONFLICT);
+    }
+
+    @Test
+    public void createEhrWithSameSubjectConcurrently() {
+        String subjectId = UUID.randomUUID().toString();
+        List<HttpStatus> statuses = invokeConcurrently(20, i -> {
+            try {
+                return exchange(getTargetPath() + "/ehr", POST, createEhrStatus(subjectId), JsonNode.class, fullRepresentationHeaders())
+                        .getStatusCode();
+            } catch (HttpStatusCodeException e) {
+                return e.getStatusCode();
+            }
+        });
+        assertThat(statuses).filteredOn(status -> status == CREATED).hasSize(1);
+        assertThat(statuses).filteredOn(status -> status != CREATED).containsOnly(CONFLICT);
+    }
+
+    @Test
+    public void compositionRoundTrip() {
+        String versionUid = postComposition(ehrId, composition);
+        String uid = new LocatableUid(versionUid).getUid();
+
+        ResponseEntity<JsonNode> response = getResponse(getTargetPath() + GET_COMPOSITION_PATH, JsonNode.class, ehrId, versionUid);
+        assertThat(response.getStatusCode()).isEqualTo(OK);
+        assertThat(getUid(getBody(response))).isEqualTo(versionUid);
+
+        HttpHeaders headers = fullRepresentationHeaders();
+        headers.set(IF_MATCH, versionUid);
+        ResponseEntity<JsonNode> updated = exchange(
+                getTargetPath() + GET_COMPOSITION_PATH, PUT, fixtures.getJson("/rest/composition.json", "John Nurse"), JsonNode.class, headers, ehrId, uid);
+        assertThat(updated.getStatusCode()).isEqualTo(OK);
+        String updatedVersionUid = getUid(getBody(updated));
+        assertThat(updatedVersionUid).isEqualTo(new LocatableUid(versionUid).next().toString());
+
+        HttpStatusCodeException exception = assertThrows(
+                HttpStatusCodeException.class,
+                () -> exchange(getTargetPath() + GET_COMPOSITION_PATH, PUT, composition, JsonNode.class, headers, ehrId, uid));
+        assertThat(exception.getStatusCode()).isEqualTo(PRECONDITION_FAILED);
+
+        Instant committed = getCommitTime(GET_COMPOSITION_VERSION_PATH, ehrId, uid, versionUid);
+        JsonNode atTime = getResponse(
+                getTargetPath() + GET_COMPOSITION_PATH + "?version_at_time={version_at_time}",
+                JsonNode.class,
+                ehrId,
+                uid,
+                VersionTimes.versionAtTime(committed)).getBody();
+        assertThat(atTime).isNotNull();
+        assertThat(getUid(atTime)).isEqualTo(versionUid);
+
+        ResponseEntity<JsonNode> deleted = deleteResponse(getTargetPath() + GET_COMPOSITION_PATH.replace("{ehr_id}", ehrId)
+                .replace("{version_uid}", updatedVersionUid), JsonNode.class);
+        assertThat(deleted.getStatusCode()).isEqualTo(NO_CONTENT);
+        assertThat(getResponse(getTargetPath() + GET_COMPOSITION_PATH, JsonNode.class, ehrId, uid).getStatusCode()).isEqualTo(NO_CONTENT);
+    }
+
+    @Test
+    public void queryRoundTrip() {
+        String versionUid = postComposition(ehrId, composition);
+
+        OpenEhrQueryRequest request = new OpenEhrQueryRequest();
+        request.setQ("SELECT c/uid/value FROM EHR e[ehr_id/value='" + ehrId + "'] CONTAINS COMPOSITION c");
+        ResponseEntity<OpenEhrQueryResponse> response = exchange(getTargetPath() + "/query/aql", POST, request, OpenEhrQueryResponse.class);
+        assertThat(response.getStatusCode()).isEqualTo(OK);
+        OpenEhrQueryResponse body = getBody(response);
+        assertThat(body.getColumns()).hasSize(1);
+        assertThat(body.getRows()).extracting(row -> row.get(0)).contains(versionUid);
+
+        String name = "org.openehr::standin" + createRandomNumString().replace("-", "");
+        putStoredQuery(name, "1.9.0", "SELECT e/ehr_id/value FROM EHR e");
+        putStoredQuery(name, "1.10.0", request.getQ());
+        ResponseEntity<OpenEhrQueryResponse> stored = exchange(
+                getTargetPath() + "/query/{qualified_query_name}", POST, new OpenEhrQueryRequest(), OpenEhrQueryResponse.class, null, name);
+        assertThat(getBody(stored).getQ()).isEqualTo(request.getQ());
+    }
+
+    @Test
+    public void templateRoundTrip() {
+        uploadTemplate("/rest/MedikationLoop.opt");
+        ResponseEntity<OpenEhrTemplateDefinition[]> response =
+                getResponse(getTargetPath() + OpenEhrTemplateUploader.TEMPLATE_PATH, OpenEhrTemplateDefinition[].class);
+        assertThat(response.getStatusCode()).isEqualTo(OK);
+        assertThat(getBody(response)).extracting(OpenEhrTemplateDefinition::getTemplateId).contains("Demo Vitals", "MedikationLoop");
+
+        OpenEhrTemplateCache<String> cache = new OpenEhrTemplateCache<>(
+                restTemplate, getTargetPath() + OpenEhrTemplateUploader.TEMPLATE_PATH, String.class, 16L, Duration.ZERO);
+        assertThat(cache.getTemplate("MedikationLoop")).hasValueSatisfying(template -> assertThat(template).contains("MedikationLoop"));
+        assertThat(cache.getTemplate("MedikationLoop")).isPresent();
+        assertThat(cache.getNotModifiedCount()).isEqualTo(1L);
+        assertThat(cache.getTemplate(UUID.randomUUID().toString())).isEmpty();
+    }
+
+    private void putStoredQuery(String name, String version, String q) {
+        OpenEhrViewRequest request = new OpenEhrViewRequest();
+        request.setQ(q);
+        ResponseEntity<JsonNode> response = exchange(
+                getTargetPath() + "/definition/query/{qualified_query_name}/{version}", PUT, request, JsonNode.class, null, name, version);
+        assertThat(response.getStatusCode().is2xxSuccessful()).isTrue();
+    }
+
+    private ObjectNode createEhrStatus(String subjectId) {
+        ObjectNode ehrStatus = objectMapper.createObjectNode();
+        ehrStatus.put("_type", "EHR_STATUS");
+        ehrStatus.put("archetype_node_id", "openEHR-EHR-EHR_STATUS.generic.v1");
+        ehrStatus.putObject("name").put("_type", "DV_TEXT").put("value", "EHR Status");
+        ObjectNode externalRef = ehrStatus.putObject("subject").put("_type", "PARTY_SELF").putObject("external_ref");
+        externalRef.put("_type", "PARTY_REF");
+        externalRef.putObject("id").put("_type", "GENERIC_ID").put("value", subjectId).put("scheme", "id_scheme");
+        externalRef.put("namespace", "standin");
+        externalRef.put("type", "PERSON");
+        ehrStatus.put("is_modifiable", true);
+        ehrStatus.put("is_queryable", true);
+        return ehrStatus;
+    }
+}
@@ -19,8 +19,13 @@ import org.apache.commons.io.IOUtils;
 import org.assertj.core.groups.Tuple;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.openehr.data.OpenEhrTemplateDefinition;
 import org.openehr.rest.conf.WebClientConfiguration;
+import org.openehr.rest.template.OpenEhrTemplateBulkLoader;
+import org.openehr.rest.template.OpenEhrTemplateCache;
+import org.openehr.rest.template.OpenEhrTemplateUploader;
+import org.openehr.rest.template.TemplateBulkLoadReport;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
 import org.springframework.boot.autoconfigure.security.servlet.SecurityAutoConfiguration;
@@ -34,8 +39,14 @@ import org.xmlunit.builder.Input;
 import org.xmlunit.diff.Diff;
 
 import javax.xml.transform.Source;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.Collections;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -79,6 +90,78 @@ public class OpenEhrTemplateRestTest extends AbstractRestTest {
         validateLocationAndETag(response2, false, true);
     }
 
+    @Test
+    public void uploadStreaming() throws IOException {
+        HttpHeaders headers = fullRepresentationHeaders();
+        headers.setAccept(Collections.singletonList(APPLICATION_XML));
+
+        // chunked, length not known up front
+        ResponseEntity<String> response;
+        try (InputStream inputStream = OpenEhrTemplateRestTest.class.getResourceAsStream("/rest/test_singletemplate.xml")) {
+            response = templateUploader.upload(inputStream, -1L, headers);
+        }
+        assertThat(response.getStatusCode()).isEqualTo(CREATED);
+        String responseTemplate = response.getBody();
+        assertThat(responseTemplate).isNotNull();
+        compareTemplates(
+                IOUtils.toString(OpenEhrTemplateRestTest.class.getResourceAsStream("/rest/test_singletemplate.xml"), StandardCharsets.UTF_8),
+                responseTemplate);
+        validateLocationAndETag(response, false, true);
+
+        // with content length
+        byte[] template = IOUtils.toByteArray(OpenEhrTemplateRestTest.class.getResourceAsStream("/rest/Demo Vitals.opt"));
+        ResponseEntity<String> response2 = templateUploader.upload(new ByteArrayInputStream(template), template.length);
+        assertThat(response2.getStatusCode()).isEqualTo(CREATED);
+        validateLocationAndETag(response2, false, true);
+    }
+
+    @Test
+    public void bulkLoad(@TempDir Path templateDirectory) throws IOException {
+        for (String template : Arrays.asList("Demo Vitals.opt", "AtemfrequenzTemplate.opt", "MedikationLoop.opt")) {
+            Files.copy(OpenEhrTemplateRestTest.class.getResourceAsStream("/rest/" + template), templateDirectory.resolve(template));
+        }
+
+        try (OpenEhrTemplateBulkLoader loader = new OpenEhrTemplateBulkLoader(restTemplate, templateUploader, 2)) {
+            TemplateBulkLoadReport report = loader.load(templateDirectory);
+            assertThat(report.getTemplateResults())
+                    .extracting(TemplateBulkLoadReport.TemplateResult::getTemplateId)
+                    .containsExactlyInAnyOrder("Demo Vitals", "AtemfrequenzTemplate", "MedikationLoop");
+            assertThat(report.getTemplateResults(TemplateBulkLoadReport.Outcome.FAILED)).isEmpty();
+            // uploaded in setUp
+            assertThat(report.getTemplateResults(TemplateBulkLoadReport.Outcome.SKIPPED))
+                    .extracting(TemplateBulkLoadReport.TemplateResult::getTemplateId)
+                    .contains("Demo Vitals");
+
+            TemplateBulkLoadReport secondReport = loader.load(templateDirectory);
+            assertThat(secondReport.getCount(TemplateBulkLoadReport.Outcome.SKIPPED)).isEqualTo(3L);
+        }
+    }
+
+    @Test
+    public void templateCache() {
+        OpenEhrTemplateCache<String> cache = new OpenEhrTemplateCache<>(
+                restTemplate, getTargetPath() + OpenEhrTemplateUploader.TEMPLATE_PATH, String.class, 16L, Duration.ofMinutes(5L));
+
+        String template = cache.getTemplate("Demo Vitals").orElse(null);
+        assertThat(template).isNotNull().contains("Demo Vitals");
+        assertThat(cache.getTemplate("Demo Vitals")).containsSame(template);
+        assertThat(cache.getDownloadCount()).isEqualTo(1L);
+        assertThat(cache.getHitCount()).isEqualTo(1L);
+
+        assertThat(cache.getTemplateDefinitions())
+                .extracting(OpenEhrTemplateDefinition::getTemplateId)
+                .contains("Demo Vitals");
+        assertThat(cache.getTemplateDefinitions()).isSameAs(cache.getTemplateDefinitions());
+
+        // revalidated on every lookup, either 304 or downloaded again
+        OpenEhrTemplateCache<String> revalidatingCache = new OpenEhrTemplateCache<>(
+                restTemplate, getTargetPath() + OpenEhrTemplateUploader.TEMPLATE_PATH, String.class, 16L, Duration.ZERO);
+        assertThat(revalidatingCache.getTemplate("Demo Vitals")).isPresent();
+        assertThat(revalidatingCache.getTemplate("Demo Vitals")).isPresent();
+        assertThat(revalidatingCache.getHitCount()).isZero();
+        assertThat(revalidatingCache.getNotModifiedCount() + revalidatingCache.getDownloadCount()).isEqualTo(2L);
+    }
+
     @Test
     public void getTemplates() throws IOException {
         ResponseEntity<OpenEhrTemplateDefinition[]> response = getResponse(getTargetPath() + "/definition/template/adl1.4", OpenEhrTemplateDefinition[].class);
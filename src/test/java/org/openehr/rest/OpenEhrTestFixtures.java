@@ -0,0 +1,187 @@
+/*
+ * Copyright 2020-2021 Better Ltd (www.better.care)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.openehr.rest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.io.IOUtils;
+import org.openehr.rest.template.OpenEhrTemplateUploader;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Fixtures shared by all test classes of a run (the bean lives in the cached test context): templates are uploaded once,
+ * EHRs are created {@code ehrPoolSize} at a time in parallel and handed out one per caller, and classpath resources are
+ * read and parsed once.
+ *
+ * @author Dusan Markovic
+ */
+public class OpenEhrTestFixtures {
+    public static final String PLACEHOLDER = "{{REPLACE_THIS}}";
+
+    private final RestTemplate restTemplate;
+    private final OpenEhrTemplateUploader templateUploader;
+    private final ObjectMapper objectMapper;
+    private final ExecutorService executorService;
+    private final String ehrUrl;
+    private final int ehrPoolSize;
+    private final ConcurrentMap<String, CompletableFuture<Void>> templates = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, String> resources = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, JsonNode> jsonResources = new ConcurrentHashMap<>();
+    private final Queue<String> ehrIds = new ConcurrentLinkedQueue<>();
+
+    public OpenEhrTestFixtures(
+            RestTemplate restTemplate,
+            OpenEhrTemplateUploader templateUploader,
+            ObjectMapper objectMapper,
+            ExecutorService executorService,
+            String baseUrl,
+            int ehrPoolSize) {
+        this.restTemplate = restTemplate;
+        this.templateUploader = templateUploader;
+        this.objectMapper = objectMapper;
+        this.executorService = executorService;
+        ehrUrl = baseUrl + "/ehr";
+        this.ehrPoolSize = Math.max(1, ehrPoolSize);
+    }
+
+    /**
+     * Uploads the classpath template unless it was already uploaded in this run, concurrent callers wait for the same
+     * upload. A 409 (uploaded by an earlier run) counts as uploaded.
+     *
+     * @param templatePath classpath path of the template
+     */
+    public void uploadTemplate(String templatePath) {
+        CompletableFuture<Void> upload = templates.computeIfAbsent(templatePath, path -> new CompletableFuture<>());
+        synchronized (upload) {
+            if (!upload.isDone()) {
+                try {
+                    templateUploader.upload(new ClassPathResource(templatePath, OpenEhrTestFixtures.class));
+                } catch (HttpClientErrorException e) {
+                    if (e.getRawStatusCode() != 409) {
+                        templates.remove(templatePath, upload);
+                        throw e;
+                    }
+                } catch (IOException e) {
+                    templates.remove(templatePath, upload);
+                    throw new UncheckedIOException(e);
+                }
+                upload.complete(null);
+            }
+        }
+    }
+
+    /**
+     * Returns an EHR nobody else got, the pool is refilled with {@code ehrPoolSize} EHRs created in parallel when empty.
+     *
+     * @return id of a new EHR
+     */
+    public String takeEhr() {
+        String ehrId = ehrIds.poll();
+        if (ehrId != null) {
+            return ehrId;
+        }
+        synchronized (ehrIds) {
+            ehrId = ehrIds.poll();
+            if (ehrId == null) {
+                List<String> created = createEhrs();
+                ehrId = created.get(0);
+                ehrIds.addAll(created.subList(1, created.size()));
+            }
+            return ehrId;
+        }
+    }
+
+    /**
+     * Returns the classpath resource as UTF-8 text, read once.
+     *
+     * @param resourcePath classpath path
+     * @return resource content
+     */
+    public String getResource(String resourcePath) {
+        return resources.computeIfAbsent(resourcePath, path -> {
+            try (InputStream inputStream = Objects.requireNonNull(OpenEhrTestFixtures.class.getResourceAsStream(path), path)) {
+                return IOUtils.toString(inputStream, "UTF-8");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Returns a copy of the classpath JSON resource, parsed once.
+     *
+     * @param resourcePath classpath path
+     * @return JSON tree the caller may modify
+     */
+    public JsonNode getJson(String resourcePath) {
+        // replacing the placeholder with itself leaves the resource as it is
+        return getJson(resourcePath, PLACEHOLDER);
+    }
+
+    /**
+     * Returns a copy of the classpath JSON resource with {@value #PLACEHOLDER} replaced, parsed once per replacement.
+     *
+     * @param resourcePath     classpath path
+     * @param placeholderValue replacement of the placeholder
+     * @return JSON tree the caller may modify
+     */
+    public JsonNode getJson(String resourcePath, String placeholderValue) {
+        return jsonResources.computeIfAbsent(resourcePath + '\n' + placeholderValue, key -> {
+            try {
+                return objectMapper.readTree(getResource(resourcePath).replace(PLACEHOLDER, placeholderValue));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }).deepCopy();
+    }
+
+    private List<String> createEhrs() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("Prefer", "return=representation");
+        headers.setAccept(List.of(MediaType.APPLICATION_JSON));
+        HttpEntity<Void> request = new HttpEntity<>(headers);
+        List<CompletableFuture<String>> futures = IntStream.range(0, ehrPoolSize)
+                .mapToObj(i -> CompletableFuture.supplyAsync(
+                        () -> Objects.requireNonNull(restTemplate.postForObject(ehrUrl, request, JsonNode.class)).get("ehr_id").get("value").asText(),
+                        executorService))
+                .collect(Collectors.toList());
+        try {
+            return futures.stream().map(CompletableFuture::join).collect(Collectors.toCollection(ArrayList::new));
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException)e.getCause() : e;
+        }
+    }
+}
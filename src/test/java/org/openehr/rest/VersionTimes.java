@@ -0,0 +1,73 @@
+/*
+ * Copyright 2020-2021 Better Ltd (www.better.care)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.openehr.rest;
+
+import org.springframework.http.HttpHeaders;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.temporal.ChronoField;
+
+/**
+ * Builds {@code version_at_time} parameters from the commit times the server reports, so time travel tests neither
+ * depend on the client clock nor wait for time to pass.
+ *
+ * @author Dusan Markovic
+ */
+final class VersionTimes {
+    private static final DateTimeFormatter COMMIT_TIME_PARSER = new DateTimeFormatterBuilder()
+            .append(DateTimeFormatter.ISO_LOCAL_DATE_TIME)
+            .optionalStart().appendOffset("+HH:MM", "Z").optionalEnd()
+            .optionalStart().appendOffset("+HHMM", "Z").optionalEnd()
+            .toFormatter();
+    private static final DateTimeFormatter VERSION_AT_TIME_FORMATTER = new DateTimeFormatterBuilder()
+            .appendPattern("yyyy-MM-dd'T'HH:mm:ss")
+            .appendFraction(ChronoField.NANO_OF_SECOND, 3, 9, true)
+            .appendOffset("+HH:MM", "Z")
+            .toFormatter()
+            .withZone(ZoneOffset.UTC);
+
+    private VersionTimes() {
+    }
+
+    /**
+     * Parses {@code time_committed} of a commit audit, with or without a colon in the offset.
+     */
+    static Instant parseCommitTime(String timeCommitted) {
+        return OffsetDateTime.parse(timeCommitted, COMMIT_TIME_PARSER).toInstant();
+    }
+
+    /**
+     * Returns the {@code Last-Modified} header, the commit time truncated to seconds.
+     */
+    static Instant getLastModified(HttpHeaders headers) {
+        long lastModified = headers.getLastModified();
+        if (lastModified < 0L) {
+            throw new IllegalStateException("Response has no Last-Modified header.");
+        }
+        return Instant.ofEpochMilli(lastModified);
+    }
+
+    /**
+     * Formats {@code time} for {@code version_at_time} with the precision of the commit time it was read from (at least
+     * milliseconds), so that neither the version committed at {@code time} nor the next one is cut off.
+     */
+    static String versionAtTime(Instant time) {
+        return VERSION_AT_TIME_FORMATTER.format(time);
+    }
+}
@@ -14,11 +14,17 @@
 
 package org.openehr.rest.conf;
 
+import org.openehr.rest.auth.HttpClientPoolSettings;
+import org.openehr.rest.auth.RestClientOptions;
+import org.openehr.rest.metrics.HttpLatencyInterceptor;
+import org.openehr.rest.metrics.OpenEhrClientMetrics;
+import org.openehr.rest.template.OpenEhrTemplateUploader;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
+import org.springframework.http.client.ClientHttpRequestFactory;
 import org.springframework.http.converter.ByteArrayHttpMessageConverter;
 import org.springframework.http.converter.StringHttpMessageConverter;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
@@ -27,6 +33,7 @@ import org.springframework.web.client.RestTemplate;
 
 import java.net.URI;
 
+import static org.openehr.rest.auth.AuthUtils.createRequestFactory;
 import static org.openehr.rest.auth.AuthUtils.createRestTemplate;
 
 /**
@@ -34,20 +41,38 @@ import static org.openehr.rest.auth.AuthUtils.createRestTemplate;
  */
 @Configuration
 @ConditionalOnProperty(value = "auth.basic.username")
-@Import(MessageConvertersConfiguration.class)
+@Import({MessageConvertersConfiguration.class, HttpClientPoolConfiguration.class, HttpMetricsConfiguration.class})
 public class BasicAuthConfiguration {
 
     @Bean
-    public RestTemplate restTemplate(
+    public ClientHttpRequestFactory clientHttpRequestFactory(
             @Value("${openehr.rest.uri}") URI uri,
             @Value("${auth.basic.username}") String username,
             @Value("${auth.basic.password}") String password,
+            HttpClientPoolSettings poolSettings,
+            OpenEhrClientMetrics openEhrClientMetrics) {
+        return createRequestFactory(
+                uri, username, password, new RestClientOptions().poolSettings(poolSettings).metrics(openEhrClientMetrics).bufferRequestBody(false));
+    }
+
+    @Bean
+    public RestTemplate restTemplate(
+            ClientHttpRequestFactory clientHttpRequestFactory,
+            HttpLatencyInterceptor httpLatencyInterceptor,
+            OpenEhrClientMetrics openEhrClientMetrics,
             StringHttpMessageConverter stringHttpMessageConverter,
             Jaxb2RootElementHttpMessageConverter jaxb2MessageConverter,
             ByteArrayHttpMessageConverter byteArrayHttpMessageConverter,
             MappingJackson2HttpMessageConverter mappingJackson2HttpMessageConverter) {
-        return createRestTemplate(
-                uri, username, password, null,
+        RestTemplate restTemplate = createRestTemplate(
+                clientHttpRequestFactory, null, openEhrClientMetrics,
                 stringHttpMessageConverter, jaxb2MessageConverter, byteArrayHttpMessageConverter, mappingJackson2HttpMessageConverter);
+        restTemplate.getInterceptors().add(httpLatencyInterceptor);
+        return restTemplate;
+    }
+
+    @Bean
+    public OpenEhrTemplateUploader templateUploader(@Value("${openehr.rest.uri}") URI uri, ClientHttpRequestFactory clientHttpRequestFactory) {
+        return new OpenEhrTemplateUploader(clientHttpRequestFactory, uri + OpenEhrTemplateUploader.TEMPLATE_PATH, null);
     }
 }
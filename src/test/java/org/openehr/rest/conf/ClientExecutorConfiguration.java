@@ -0,0 +1,35 @@
+/*
+ * Copyright 2020-2021 Better Ltd (www.better.care)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.openehr.rest.conf;
+
+import org.openehr.utils.ClientExecutors;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * @author Dusan Markovic
+ */
+@Configuration
+public class ClientExecutorConfiguration {
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService clientExecutorService(
+            @Value("${openehr.rest.virtual-threads:false}") boolean virtualThreads,
+            @Value("${openehr.rest.concurrency:16}") int concurrency) {
+        return ClientExecutors.newClientExecutor(virtualThreads, concurrency, "openehr-client");
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2020-2021 Better Ltd (www.better.care)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.openehr.rest.conf;
+
+import org.openehr.rest.auth.HttpClientPoolSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @author Dusan Markovic
+ */
+@Configuration
+public class HttpClientPoolConfiguration {
+    @Bean
+    public HttpClientPoolSettings httpClientPoolSettings(
+            @Value("${openehr.rest.pool.max-total:${openehr.rest.concurrency:200}}") int maxTotal,
+            @Value("${openehr.rest.pool.max-per-route:${openehr.rest.concurrency:100}}") int maxPerRoute,
+            @Value("${openehr.rest.pool.keep-alive-millis:30000}") long keepAliveMillis,
+            @Value("${openehr.rest.pool.idle-eviction-millis:60000}") long idleEvictionMillis,
+            @Value("${openehr.rest.pool.time-to-live-millis:-1}") long timeToLiveMillis,
+            @Value("${openehr.rest.pool.max-pending-acquires:-1}") int maxPendingAcquires,
+            @Value("${openehr.rest.pool.pending-acquire-timeout-millis:45000}") long pendingAcquireTimeoutMillis) {
+        HttpClientPoolSettings poolSettings = new HttpClientPoolSettings();
+        poolSettings.setMaxTotal(maxTotal);
+        poolSettings.setMaxPerRoute(maxPerRoute);
+        poolSettings.setKeepAliveMillis(keepAliveMillis);
+        poolSettings.setIdleEvictionMillis(idleEvictionMillis);
+        poolSettings.setTimeToLiveMillis(timeToLiveMillis);
+        poolSettings.setMaxPendingAcquires(maxPendingAcquires);
+        poolSettings.setPendingAcquireTimeoutMillis(pendingAcquireTimeoutMillis);
+        return poolSettings;
+    }
+}
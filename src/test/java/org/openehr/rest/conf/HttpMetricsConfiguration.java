@@ -0,0 +1,77 @@
+/*
+ * Copyright 2020-2021 Better Ltd (www.better.care)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.openehr.rest.conf;
+
+import org.openehr.rest.metrics.EndpointTemplates;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openehr.rest.metrics.HttpLatencyInterceptor;
+import org.openehr.rest.metrics.OpenEhrClientMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * @author Dusan Markovic
+ */
+@Configuration
+public class HttpMetricsConfiguration {
+    private static final Logger LOG = LoggerFactory.getLogger(HttpMetricsConfiguration.class);
+
+    @Bean
+    public HttpLatencyInterceptor httpLatencyInterceptor(@Value("${openehr.rest.uri}") URI uri) {
+        return new HttpLatencyInterceptor(new EndpointTemplates(uri.getPath()));
+    }
+
+    @Bean
+    public MeterRegistry meterRegistry() {
+        return new SimpleMeterRegistry();
+    }
+
+    @Bean
+    public OpenEhrClientMetrics openEhrClientMetrics(MeterRegistry meterRegistry, @Value("${openehr.rest.uri}") URI uri) {
+        return new OpenEhrClientMetrics(meterRegistry, new EndpointTemplates(uri.getPath()));
+    }
+
+    @Bean
+    public DisposableBean httpLatencyReport(
+            HttpLatencyInterceptor httpLatencyInterceptor,
+            @Value("${openehr.rest.latency-report:target/http-latency.json}") String reportFile) {
+        return () -> {
+            LOG.info("HTTP latency summary:\n{}", httpLatencyInterceptor.toText());
+            if (!reportFile.isEmpty()) {
+                try {
+                    Path path = Paths.get(reportFile);
+                    if (path.getParent() != null) {
+                        Files.createDirectories(path.getParent());
+                    }
+                    Files.write(path, httpLatencyInterceptor.toJson().getBytes(StandardCharsets.UTF_8));
+                } catch (IOException e) {
+                    LOG.warn("Could not write HTTP latency report to {}.", reportFile, e);
+                }
+            }
+        };
+    }
+}
@@ -15,6 +15,9 @@
 package org.openehr.rest.conf;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.openehr.rest.metrics.TimedMappingJackson2HttpMessageConverter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.converter.ByteArrayHttpMessageConverter;
@@ -51,10 +54,12 @@ public class MessageConvertersConfiguration {
     }
 
     @Bean
-    public MappingJackson2HttpMessageConverter mappingJackson2HttpMessageConverter(ObjectMapper objectMapper) {
-        MappingJackson2HttpMessageConverter converter = new MappingJackson2HttpMessageConverter();
+    public MappingJackson2HttpMessageConverter mappingJackson2HttpMessageConverter(
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${openehr.client.json.buffer-responses:false}") boolean bufferResponses) {
+        MappingJackson2HttpMessageConverter converter = new TimedMappingJackson2HttpMessageConverter(objectMapper, meterRegistry, bufferResponses);
         converter.setDefaultCharset(StandardCharsets.UTF_8);
-        converter.setObjectMapper(objectMapper);
         return converter;
     }
 }
@@ -15,12 +15,18 @@
 package org.openehr.rest.conf;
 
 import org.openehr.rest.auth.AuthUtils;
+import org.openehr.rest.auth.HttpClientPoolSettings;
 import org.openehr.rest.auth.NoopResponseErrorHandler;
+import org.openehr.rest.auth.RestClientOptions;
+import org.openehr.rest.metrics.HttpLatencyInterceptor;
+import org.openehr.rest.metrics.OpenEhrClientMetrics;
+import org.openehr.rest.template.OpenEhrTemplateUploader;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
+import org.springframework.http.client.ClientHttpRequestFactory;
 import org.springframework.http.converter.ByteArrayHttpMessageConverter;
 import org.springframework.http.converter.StringHttpMessageConverter;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
@@ -34,18 +40,36 @@ import java.net.URI;
  */
 @Configuration
 @ConditionalOnProperty(value = "auth.basic.username", matchIfMissing = true, havingValue = "wYu9jn8UuMih75Pndl7K")
-@Import(MessageConvertersConfiguration.class)
+@Import({MessageConvertersConfiguration.class, HttpClientPoolConfiguration.class, HttpMetricsConfiguration.class})
 public class NoAuthConfiguration {
 
     @Bean
-    public RestTemplate restTemplate(
+    public ClientHttpRequestFactory clientHttpRequestFactory(
             @Value("${openehr.rest.uri}") URI uri,
+            HttpClientPoolSettings poolSettings,
+            OpenEhrClientMetrics openEhrClientMetrics) {
+        return AuthUtils.createRequestFactory(
+                uri, null, null, new RestClientOptions().poolSettings(poolSettings).metrics(openEhrClientMetrics).bufferRequestBody(false));
+    }
+
+    @Bean
+    public RestTemplate restTemplate(
+            ClientHttpRequestFactory clientHttpRequestFactory,
+            HttpLatencyInterceptor httpLatencyInterceptor,
+            OpenEhrClientMetrics openEhrClientMetrics,
             StringHttpMessageConverter stringHttpMessageConverter,
             Jaxb2RootElementHttpMessageConverter jaxb2MessageConverter,
             ByteArrayHttpMessageConverter byteArrayHttpMessageConverter,
             MappingJackson2HttpMessageConverter mappingJackson2HttpMessageConverter) {
-        return AuthUtils.createRestTemplate(
-                uri, null, null, new NoopResponseErrorHandler(),
+        RestTemplate restTemplate = AuthUtils.createRestTemplate(
+                clientHttpRequestFactory, new NoopResponseErrorHandler(), openEhrClientMetrics,
                 stringHttpMessageConverter, jaxb2MessageConverter, byteArrayHttpMessageConverter, mappingJackson2HttpMessageConverter);
+        restTemplate.getInterceptors().add(httpLatencyInterceptor);
+        return restTemplate;
+    }
+
+    @Bean
+    public OpenEhrTemplateUploader templateUploader(@Value("${openehr.rest.uri}") URI uri, ClientHttpRequestFactory clientHttpRequestFactory) {
+        return new OpenEhrTemplateUploader(clientHttpRequestFactory, uri + OpenEhrTemplateUploader.TEMPLATE_PATH, new NoopResponseErrorHandler());
     }
 }
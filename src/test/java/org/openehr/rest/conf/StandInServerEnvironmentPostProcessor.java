@@ -0,0 +1,68 @@
+/*
+ * Copyright 2020-2021 Better Ltd (www.better.care)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.openehr.rest.conf;
+
+import org.openehr.rest.json.OpenEhrObjectMapper;
+import org.openehr.rest.standin.InMemoryOpenEhrStore;
+import org.openehr.rest.standin.OpenEhrStandInServer;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.env.EnvironmentPostProcessor;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.MapPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Collections;
+
+/**
+ * Starts an {@link OpenEhrStandInServer} when {@code openehr.standin.enabled} is true and points {@code openehr.rest.uri}
+ * at it. One server is shared by all test contexts in the JVM and stopped on shutdown.
+ *
+ * @author Dusan Markovic
+ */
+public class StandInServerEnvironmentPostProcessor implements EnvironmentPostProcessor {
+    private static OpenEhrStandInServer server;
+
+    @Override
+    public void postProcessEnvironment(ConfigurableEnvironment environment, SpringApplication application) {
+        if (environment.getProperty("openehr.standin.enabled", Boolean.class, false)) {
+            OpenEhrStandInServer standInServer = getServer(environment);
+            environment.getPropertySources().addFirst(
+                    new MapPropertySource("openehrStandIn", Collections.singletonMap("openehr.rest.uri", standInServer.getUri().toString())));
+        }
+    }
+
+    private static synchronized OpenEhrStandInServer getServer(ConfigurableEnvironment environment) {
+        if (server == null) {
+            OpenEhrStandInServer standInServer = new OpenEhrStandInServer(new InMemoryOpenEhrStore(), new OpenEhrObjectMapper())
+                    .port(environment.getProperty("openehr.standin.port", Integer.class, 0))
+                    .threads(environment.getProperty("openehr.standin.threads", Integer.class, 16))
+                    .virtualThreads(environment.getProperty("openehr.rest.virtual-threads", Boolean.class, false))
+                    .latency(Duration.ofMillis(environment.getProperty("openehr.standin.latency-millis", Long.class, 0L)))
+                    .latencyJitter(Duration.ofMillis(environment.getProperty("openehr.standin.latency-jitter-millis", Long.class, 0L)))
+                    .queryRowCount(environment.getProperty("openehr.standin.query-rows", Integer.class, 0))
+                    .responsePadding(environment.getProperty("openehr.standin.response-padding", Integer.class, 0));
+            try {
+                standInServer.start();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not start the stand-in server.", e);
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(standInServer::close, "openehr-stand-in-shutdown"));
+            server = standInServer;
+        }
+        return server;
+    }
+}
@@ -16,25 +16,61 @@ package org.openehr.rest.conf;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.openehr.data.OpenEhrConformance;
+import org.openehr.rest.OpenEhrTestFixtures;
+import org.openehr.rest.auth.HttpClientPoolSettings;
+import org.openehr.rest.auth.WebClientUtils;
 import org.openehr.rest.json.OpenEhrObjectMapper;
+import org.openehr.rest.template.OpenEhrTemplateUploader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
 
+import java.net.URI;
 import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
 import java.util.stream.Collectors;
 
 /**
  * @author Dusan Markovic
  */
 @Configuration
-@Import(value = {BasicAuthConfiguration.class})
+@Import(value = {BasicAuthConfiguration.class, HttpClientPoolConfiguration.class, ClientExecutorConfiguration.class})
 public class WebClientConfiguration {
+    private static final Logger LOG = LoggerFactory.getLogger(WebClientConfiguration.class);
 
     @Bean
     public ObjectMapper objectMapper() {
-        return new OpenEhrObjectMapper();
+        OpenEhrObjectMapper objectMapper = new OpenEhrObjectMapper();
+        // RM serializers and deserializers are built here instead of on the first requests
+        LOG.info("Prewarmed object mapper in {} ms.", objectMapper.prewarm());
+        return objectMapper;
+    }
+
+    @Bean
+    public WebClient webClient(
+            @Value("${openehr.rest.uri}") URI uri,
+            @Value("${auth.basic.username:#{null}}") String username,
+            @Value("${auth.basic.password:#{null}}") String password,
+            HttpClientPoolSettings poolSettings,
+            ObjectMapper objectMapper) {
+        return WebClientUtils.createWebClient(uri, username, password, poolSettings, objectMapper);
+    }
+
+    @Bean
+    public OpenEhrTestFixtures openEhrTestFixtures(
+            @Qualifier("restTemplate") RestTemplate restTemplate,
+            OpenEhrTemplateUploader templateUploader,
+            ObjectMapper objectMapper,
+            ExecutorService clientExecutorService,
+            @Value("${openehr.rest.uri}") URI uri,
+            @Value("${openehr.rest.fixtures.ehr-pool-size:16}") int ehrPoolSize) {
+        return new OpenEhrTestFixtures(restTemplate, templateUploader, objectMapper, clientExecutorService, uri.toString(), ehrPoolSize);
     }
 
     @Bean